@@ -32,6 +32,10 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // Local unit tests exercise code that logs via android.util.Log
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
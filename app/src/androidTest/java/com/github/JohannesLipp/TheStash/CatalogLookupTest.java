@@ -0,0 +1,92 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills the offline catalog with 200k synthetic products in import-sized batches and measures
+ * barcode lookups against it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogLookupTest {
+    private static final String TAG = "CatalogLookup";
+    private static final int ROW_COUNT = 200_000;
+    private static final int BATCH_SIZE = 2000;
+    private static final long FIRST_BARCODE = 4000000000000L;
+
+    private static AppDatabase database;
+
+    @BeforeClass
+    public static void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+
+        long start = SystemClock.elapsedRealtime();
+        List<CatalogProduct> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            batch.add(new CatalogProduct(String.valueOf(FIRST_BARCODE + i), "Product " + i, "Brand" + (i % 500), null));
+            if (batch.size() == BATCH_SIZE) {
+                database.runInTransaction(() -> database.catalogProductDao().insertAll(batch));
+                batch.clear();
+            }
+        }
+        Log.i(TAG, "Inserted " + ROW_COUNT + " products in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    @AfterClass
+    public static void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    public void lookupsAreSubMillisecond() {
+        CatalogProductDao dao = database.catalogProductDao();
+        assertEquals(ROW_COUNT, dao.count());
+        dao.get(String.valueOf(FIRST_BARCODE)); // Warm up the statement
+
+        Random random = new Random(ROW_COUNT);
+        int lookups = 1000;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < lookups; i++) {
+            assertNotNull(dao.get(String.valueOf(FIRST_BARCODE + random.nextInt(ROW_COUNT))));
+        }
+        long microsPerLookup = (SystemClock.elapsedRealtimeNanos() - start) / 1_000 / lookups;
+        Log.i(TAG, "Average lookup took " + microsPerLookup + " us");
+        assertTrue("Lookup took " + microsPerLookup + " us", microsPerLookup < 1_000);
+
+        assertNull(dao.get("1234567890123"));
+    }
+
+    @Test
+    public void productCacheAnswersFromCatalog() throws IOException {
+        String barcode = String.valueOf(FIRST_BARCODE + 42);
+        long before = ProductCache.getCatalogHitCount();
+
+        OpenFoodFactsResultDTO product = ProductCache.lookup(database, barcode);
+
+        assertNotNull(product);
+        assertEquals("Product 42", product.getProductName());
+        assertEquals(before + 1, ProductCache.getCatalogHitCount());
+        assertTrue(ProductCache.isFresh(database, barcode));
+    }
+}
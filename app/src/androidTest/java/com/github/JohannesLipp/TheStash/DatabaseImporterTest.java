@@ -0,0 +1,126 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that a replacing import only replaces the stash once the whole file has been read.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseImporterTest {
+    private static final int EXISTING_ITEMS = 3;
+
+    private Context context;
+    private AppDatabase database;
+    private File exportFile;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        for (int i = 0; i < EXISTING_ITEMS; i++) {
+            database.foodItemDao().insert(new FoodItem(String.valueOf(4000000000000L + i), 1, 6, 2027, 1));
+        }
+        exportFile = new File(context.getCacheDir(), "import-test.json");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        exportFile.delete();
+    }
+
+    @Test
+    public void brokenFileLeavesStashUntouched() throws Exception {
+        // More than one batch of valid items before the file breaks off
+        writeExport(1_200, "{\"barcode\":");
+
+        assertEquals("error", runImport(false));
+        assertEquals(EXISTING_ITEMS, database.foodItemDao().count());
+    }
+
+    @Test
+    public void cancelledReplaceIsRolledBack() throws Exception {
+        writeExport(1_200, "");
+
+        assertEquals("cancelled:0", runImport(true));
+        assertEquals(EXISTING_ITEMS, database.foodItemDao().count());
+    }
+
+    @Test
+    public void completeFileReplacesStash() throws Exception {
+        writeExport(1_200, "");
+
+        assertEquals("finished:1200", runImport(false));
+        assertEquals(1_200, database.foodItemDao().count());
+    }
+
+    private void writeExport(int items, String trailer) throws IOException {
+        try (Writer writer = new FileWriter(exportFile)) {
+            writer.write("[");
+            for (int i = 0; i < items; i++) {
+                writer.write((i > 0 ? "," : "") + "{\"id\":" + (i + 1) + ",\"barcode\":\"" + (5000000000000L + i) + "\",\"expires\":\"01.06.2027\",\"count\":1}");
+            }
+            if (trailer.isEmpty()) {
+                writer.write("]");
+            } else {
+                writer.write("," + trailer);
+            }
+        }
+    }
+
+    private String runImport(boolean cancelImmediately) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> outcome = new AtomicReference<>();
+        DatabaseImporter importer = new DatabaseImporter(database, context);
+        if (cancelImmediately) {
+            importer.cancel();
+        }
+        importer.start(Uri.fromFile(exportFile), DatabaseImporter.Mode.REPLACE, new DatabaseImporter.ProgressListener() {
+            @Override
+            public void onProgress(int imported) {
+            }
+
+            @Override
+            public void onFinished(int imported, long elapsedMillis, List<String> barcodesToEnrich) {
+                outcome.set("finished:" + imported);
+                done.countDown();
+            }
+
+            @Override
+            public void onCancelled(int imported) {
+                outcome.set("cancelled:" + imported);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                outcome.set("error");
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        return outcome.get();
+    }
+}
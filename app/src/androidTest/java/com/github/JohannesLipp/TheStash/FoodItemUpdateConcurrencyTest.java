@@ -0,0 +1,91 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs quantity reductions concurrently with metadata and image writes for the same item and
+ * checks that no reduction is lost, i.e. the data updates never write back a stale count.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FoodItemUpdateConcurrencyTest {
+    private static final int INITIAL_COUNT = 1_000;
+    private static final int REDUCTIONS = 400;
+    private static final int DATA_UPDATES = 400;
+
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.databaseBuilder(context, AppDatabase.class, "concurrency-test.db").build();
+        database.clearAllTables();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        InstrumentationRegistry.getInstrumentation().getTargetContext().deleteDatabase("concurrency-test.db");
+    }
+
+    @Test
+    public void narrowUpdatesDoNotLoseQuantityChanges() throws InterruptedException {
+        FoodItemDao dao = database.foodItemDao();
+        long id = dao.insert(new FoodItem("4000000000001", 1, 6, 2027, INITIAL_COUNT));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int worker = 0; worker < 2; worker++) {
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < REDUCTIONS / 2; i++) {
+                    dao.removeQuantity(id, 1);
+                }
+            });
+            int offset = worker;
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < DATA_UPDATES / 2; i++) {
+                    String suffix = offset + "-" + i;
+                    database.runInTransaction(() -> {
+                        dao.updateMetadata(id, "Tomatoes " + suffix, "Stash Farms", "https://images.example.org/" + suffix + ".jpg");
+                        String hash = ImageStore.store(database, suffix.getBytes());
+                        dao.updateImage(id, hash, hash);
+                    });
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        FoodItem item = dao.getById(id);
+        assertEquals(INITIAL_COUNT - REDUCTIONS, item.getCount());
+        assertEquals("Stash Farms", item.getBrands());
+        assertTrue(item.getName().startsWith("Tomatoes "));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
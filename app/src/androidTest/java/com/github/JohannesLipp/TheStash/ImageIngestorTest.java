@@ -0,0 +1,106 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Ingests a synthetic full-size product photo and compares the stored variants with the previous
+ * full-resolution JPEG re-encode, both in bytes and in the cost of decoding for the list.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageIngestorTest {
+    private static final String TAG = "ImageIngestorTest";
+
+    @Test
+    public void producesBoundedVariantsSeveralTimesSmaller() {
+        byte[] original = syntheticPhoto(2000, 1500);
+        byte[] previousJpeg = reencodeAsJpeg(original);
+
+        ImageIngestor.Images images = ImageIngestor.ingest(original);
+
+        assertNotNull(images);
+        assertLongerSide(images.thumbnail, ImageIngestor.THUMBNAIL_MAX_SIZE);
+        assertLongerSide(images.detail, ImageIngestor.DETAIL_MAX_SIZE);
+
+        long previousDecode = timeDecode(previousJpeg);
+        long thumbnailDecode = timeDecode(images.thumbnail);
+        Log.i(TAG, "previous JPEG " + previousJpeg.length + " B, thumbnail " + images.thumbnail.length + " B, detail "
+                + images.detail.length + " B; list decode " + previousDecode + " us -> " + thumbnailDecode + " us");
+
+        assertTrue(images.thumbnail.length + images.detail.length < previousJpeg.length / 3);
+        assertTrue(thumbnailDecode < previousDecode);
+    }
+
+    @Test
+    public void undecodableInputYieldsNull() {
+        assertNull(ImageIngestor.ingest(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void sampleSizeKeepsLongerSideAboveTarget() {
+        assertEquals(1, ImageIngestor.calculateInSampleSize(800, 600, 800));
+        assertEquals(2, ImageIngestor.calculateInSampleSize(2000, 1500, 800));
+        assertEquals(4, ImageIngestor.calculateInSampleSize(1500, 4000, 800));
+    }
+
+    private static void assertLongerSide(byte[] encoded, int expected) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        assertEquals(expected, Math.max(options.outWidth, options.outHeight));
+    }
+
+    private static long timeDecode(byte[] encoded) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < 10; i++) {
+            BitmapFactory.decodeByteArray(encoded, 0, encoded.length).recycle();
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / 10_000;
+    }
+
+    private static byte[] reencodeAsJpeg(byte[] original) {
+        Bitmap bitmap = BitmapFactory.decodeByteArray(original, 0, original.length);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+
+    /**
+     * A noisy image with shapes, closer to a real photo than a flat colour, encoded as a high
+     * quality JPEG like the originals served by Open Food Facts.
+     */
+    private static byte[] syntheticPhoto(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Random random = new Random(42);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        canvas.drawColor(Color.WHITE);
+        for (int i = 0; i < 400; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            canvas.drawCircle(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(200), paint);
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+}
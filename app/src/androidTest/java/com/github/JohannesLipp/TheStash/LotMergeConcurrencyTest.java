@@ -0,0 +1,137 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds the same product with the same expiry date from several threads at once and checks that
+ * all adds end up in a single lot with no count lost, also while items are being removed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LotMergeConcurrencyTest {
+    private static final int WORKERS = 4;
+    private static final int ADDS_PER_WORKER = 250;
+    private static final String BARCODE = "4000000000001";
+
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.databaseBuilder(context, AppDatabase.class, "lot-merge-test.db").build();
+        database.clearAllTables();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        InstrumentationRegistry.getInstrumentation().getTargetContext().deleteDatabase("lot-merge-test.db");
+    }
+
+    @Test
+    public void simultaneousAddsMergeIntoOneLot() throws InterruptedException {
+        FoodItemDao dao = database.foodItemDao();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int worker = 0; worker < WORKERS; worker++) {
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < ADDS_PER_WORKER; i++) {
+                    ids.add(dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 1)));
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(1, ids.size());
+        assertEquals(1, dao.count());
+        FoodItem lot = dao.getById(ids.iterator().next());
+        assertEquals(WORKERS * ADDS_PER_WORKER, lot.getCount());
+    }
+
+    @Test
+    public void removalsDoNotLoseConcurrentAdds() throws InterruptedException {
+        FoodItemDao dao = database.foodItemDao();
+        int initial = WORKERS * ADDS_PER_WORKER;
+        long id = dao.insert(new FoodItem(BARCODE, 1, 6, 2027, initial));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2 * WORKERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int worker = 0; worker < WORKERS; worker++) {
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < ADDS_PER_WORKER; i++) {
+                    dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 1));
+                }
+            });
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < ADDS_PER_WORKER; i++) {
+                    dao.removeQuantity(id, 1);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(initial, dao.getById(id).getCount());
+        assertEquals(0, dao.removeQuantity(id, initial + 1));
+        assertEquals(0, dao.count());
+    }
+
+    @Test
+    public void otherExpiryDatesGetTheirOwnLots() {
+        FoodItemDao dao = database.foodItemDao();
+        long june = dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 2));
+        long july = dao.insert(new FoodItem(BARCODE, 1, 7, 2027, 1));
+
+        assertEquals(june, dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 3)));
+        assertNotEquals(june, july);
+        assertEquals(5, dao.getById(june).getCount());
+        assertEquals(1, dao.getById(july).getCount());
+    }
+
+    @Test
+    public void mergedItemsOnlyNeedDataOnce() {
+        FoodItemDao dao = database.foodItemDao();
+        long id = dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 1));
+        assertFalse(dao.hasProductData(id));
+
+        dao.updateMetadata(id, "Tomatoes", "Stash Farms", "");
+        assertTrue(dao.hasProductData(dao.insert(new FoodItem(BARCODE, 1, 6, 2027, 1))));
+        assertTrue(dao.hasProductData(dao.insert(new FoodItem(BARCODE, 1, 8, 2027, 1))));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
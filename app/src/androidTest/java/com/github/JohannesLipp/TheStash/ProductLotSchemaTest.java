@@ -0,0 +1,133 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that lots of the same barcode share one product row, that a product and its images go
+ * with its last lot, and that databases created with schema version 5 are migrated into products
+ * and lots, with duplicate lots merged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductLotSchemaTest {
+    private static final String DATABASE_NAME = "product-lot-test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void lotsOfOneBarcodeShareProductData() {
+        AppDatabase database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        FoodItemDao dao = database.foodItemDao();
+        long june = dao.insert(new FoodItem("4000000000001", 1, 6, 2027, 2));
+        long july = dao.insert(new FoodItem("4000000000001", 1, 7, 2027, 1));
+        long manual = dao.insert(new FoodItem("", 1, 8, 2027, 1));
+
+        assertEquals(3, dao.count());
+        assertEquals(2, countRows(database, "products"));
+
+        assertEquals(1, dao.updateMetadata(june, "Tomatoes", "Stash Farms", "https://images.example.org/1.jpg"));
+        assertEquals("Tomatoes", dao.getById(july).getName());
+        assertEquals(1, dao.updateImageByBarcode("4000000000001", "detail", "thumb"));
+        assertEquals("thumb", dao.getById(july).getThumbHash());
+        assertEquals(2, dao.search(StashSearch.toMatchQuery("tomat"), 10).size());
+
+        dao.delete(dao.getById(june));
+        assertEquals(2, dao.count());
+        assertEquals("Tomatoes", dao.getById(july).getName());
+        assertNull(dao.getById(manual).getBarcode());
+        database.close();
+    }
+
+    @Test
+    public void deletingLastLotFreesProductImages() {
+        AppDatabase database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        FoodItemDao dao = database.foodItemDao();
+        String detail = ImageStore.store(database, new byte[]{1, 2, 3, 4});
+        String thumb = ImageStore.store(database, new byte[]{5, 6});
+        long june = dao.insert(new FoodItem("4000000000001", 1, 6, 2027, 1));
+        long july = dao.insert(new FoodItem("4000000000001", 1, 7, 2027, 1));
+        dao.updateImageByBarcode("4000000000001", detail, thumb);
+
+        dao.delete(dao.getById(june));
+        ImageStore.deleteUnreferenced(database);
+        assertEquals(1, countRows(database, "products"));
+        assertNotNull(ImageStore.load(database, detail));
+
+        dao.delete(dao.getById(july));
+        ImageStore.deleteUnreferenced(database);
+        assertEquals(0, countRows(database, "products"));
+        assertNull(ImageStore.load(database, detail));
+        assertNull(ImageStore.load(database, thumb));
+        database.close();
+    }
+
+    @Test
+    public void migratesVersion5ItemsIntoProductsAndLots() {
+        byte[] image = {1, 2, 3, 4};
+        try (SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DATABASE_NAME), null)) {
+            legacy.execSQL("CREATE TABLE `food_items` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, `barcode` TEXT, `expiryDay` INTEGER NOT NULL, `expiryMonth` INTEGER NOT NULL, `expiryYear` INTEGER NOT NULL, `count` INTEGER NOT NULL, `imageData` BLOB)");
+            legacy.execSQL("INSERT INTO `food_items` VALUES (1, 'Tomatoes', 'Stash Farms', 'https://images.example.org/1.jpg', '4000000000001', 1, 6, 2027, 2, ?)", new Object[]{image});
+            legacy.execSQL("INSERT INTO `food_items` VALUES (2, NULL, NULL, NULL, '4000000000001', 1, 7, 2027, 1, NULL)");
+            legacy.execSQL("INSERT INTO `food_items` VALUES (3, NULL, NULL, NULL, '', 1, 8, 2027, 3, NULL)");
+            legacy.execSQL("INSERT INTO `food_items` VALUES (4, 'Pasta', 'Nudel AG', NULL, '4000000000002', 1, 9, 2027, 5, NULL)");
+            legacy.execSQL("INSERT INTO `food_items` VALUES (5, NULL, NULL, NULL, '4000000000001', 1, 6, 2027, 4, NULL)");
+            legacy.setVersion(5);
+        }
+
+        AppDatabase database = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME).addMigrations(Migrations.ALL).build();
+        FoodItemDao dao = database.foodItemDao();
+
+        assertEquals(4, dao.count());
+        assertEquals(3, countRows(database, "products"));
+        FoodItem first = dao.getById(1);
+        FoodItem second = dao.getById(2);
+        assertNotNull(first.getImageHash());
+        assertEquals(6, first.getCount());
+        assertNull(dao.getById(5));
+        assertEquals("Tomatoes", second.getName());
+        assertEquals(first.getImageHash(), second.getImageHash());
+        assertEquals(ExpiryDates.toEpochDay(2027, 7, 1), second.getExpiryEpochDay());
+        assertNull(dao.getById(3).getBarcode());
+        assertEquals(3, dao.getById(3).getCount());
+        assertEquals(2, dao.search(StashSearch.toMatchQuery("tomat"), 10).size());
+
+        // New lots of a migrated barcode join its product, and new ids do not reuse migrated ones
+        long id = dao.insert(new FoodItem("4000000000002", 1, 10, 2027, 1));
+        assertEquals(3, countRows(database, "products"));
+        assertEquals("Pasta", dao.getById(id).getName());
+        assertEquals(6, id);
+        database.close();
+    }
+
+    private static int countRows(AppDatabase database, String table) {
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase().query("SELECT COUNT(*) FROM " + table)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+}
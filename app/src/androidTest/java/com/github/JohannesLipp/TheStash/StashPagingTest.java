@@ -0,0 +1,224 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that loading the first page of the stash list stays flat in time and memory as the
+ * table grows, using synthetic in-memory databases of increasing size.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StashPagingTest {
+    private static final String TAG = "StashPagingTest";
+
+    @Test
+    public void firstPageStaysFlatAsTableGrows() {
+        PageMeasurement small = measureFirstPage(1_000);
+        PageMeasurement large = measureFirstPage(100_000);
+        Log.i(TAG, "1k rows: " + small + ", 100k rows: " + large);
+
+        assertEquals(StashPager.PAGE_SIZE, small.rows);
+        assertEquals(StashPager.PAGE_SIZE, large.rows);
+        // A keyset page reads the same rows whatever the table size; slack absorbs timer and GC noise
+        assertTrue("First page took " + large.millis + " ms on 100k rows, " + small.millis + " ms on 1k rows",
+                large.millis <= small.millis * 3 + 50);
+        assertTrue("First page used " + large.heapBytes + " B on 100k rows, " + small.heapBytes + " B on 1k rows",
+                large.heapBytes <= small.heapBytes * 2 + 256 * 1024);
+        assertTrue("First page took " + large.millis + " ms on 100k rows", large.millis < 500);
+        assertTrue("First page used " + large.heapBytes + " B on 100k rows", large.heapBytes < 2 * 1024 * 1024);
+    }
+
+    @Test
+    public void deepScrollKeepsBoundedWindow() {
+        AppDatabase database = createDatabase(5_000);
+        TestOwner owner = new TestOwner();
+        AtomicReference<StashPager> pagerRef = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            owner.registry.setCurrentState(Lifecycle.State.STARTED);
+            TaskScope tasks = new TaskScope(owner);
+            FoodAdapter adapter = new FoodAdapter(new ThumbnailLoader(database, tasks), null, null);
+            pagerRef.set(new StashPager(database, owner, adapter, tasks));
+        });
+        StashPager pager = pagerRef.get();
+
+        // Scroll through the whole stash, then all the way back up
+        int maxRetained = 0;
+        for (int i = 0; i < 5_000 / StashPager.PAGE_SIZE; i++) {
+            awaitIdle(pager);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(pager::onLoadMore);
+            maxRetained = Math.max(maxRetained, awaitIdle(pager));
+        }
+        int retainedAtEnd = awaitIdle(pager);
+        for (int i = 0; i < 5_000 / StashPager.PAGE_SIZE; i++) {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(pager::onLoadPrevious);
+            maxRetained = Math.max(maxRetained, awaitIdle(pager));
+        }
+        int retainedAtStart = awaitIdle(pager);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> owner.registry.setCurrentState(Lifecycle.State.DESTROYED));
+        database.close();
+
+        assertEquals(StashPager.MAX_ROWS, retainedAtEnd);
+        assertEquals(StashPager.MAX_ROWS, retainedAtStart);
+        assertTrue("Pager held " + maxRetained + " rows", maxRetained <= StashPager.MAX_ROWS);
+    }
+
+    @Test
+    public void keysetPagesCoverAllRowsInOrder() {
+        AppDatabase database = createDatabase(1_234);
+        FoodItemDao dao = database.foodItemDao();
+
+        int total = 0;
+        int lastExpiryEpochDay = Integer.MIN_VALUE;
+        long lastId = Long.MIN_VALUE;
+        List<FoodListRow> page;
+        do {
+            page = dao.getListRowsAfter(lastExpiryEpochDay, lastId, StashPager.PAGE_SIZE);
+            for (FoodListRow row : page) {
+                assertTrue(row.getExpiryEpochDay() > lastExpiryEpochDay
+                        || (row.getExpiryEpochDay() == lastExpiryEpochDay && row.getId() > lastId));
+                lastExpiryEpochDay = row.getExpiryEpochDay();
+                lastId = row.getId();
+            }
+            total += page.size();
+        } while (page.size() == StashPager.PAGE_SIZE);
+
+        assertEquals(1_234, total);
+        database.close();
+    }
+
+    @Test
+    public void expiringBetweenReturnsWindowInFullDateOrder() {
+        AppDatabase database = createDatabase(2_000);
+        int from = ExpiryDates.toEpochDay(2026, 3, 1);
+        int to = from + 30;
+
+        List<FoodListRow> rows = database.foodItemDao().getListRowsExpiringBetween(from, to);
+
+        assertTrue(rows.size() > 0);
+        int lastEpochDay = from;
+        for (FoodListRow row : rows) {
+            assertEquals(ExpiryDates.toEpochDay(row.getExpiryYear(), row.getExpiryMonth(), row.getExpiryDay()), row.getExpiryEpochDay());
+            assertTrue(row.getExpiryEpochDay() >= lastEpochDay && row.getExpiryEpochDay() <= to);
+            lastEpochDay = row.getExpiryEpochDay();
+        }
+        database.close();
+    }
+
+    @Test
+    public void listQueriesUseExpiryIndex() {
+        AppDatabase database = createDatabase(10);
+        String keysetPlan = queryPlan(database, "SELECT id FROM food_items WHERE expiryEpochDay >= 0 AND (expiryEpochDay > 0 OR id > 0) ORDER BY expiryEpochDay ASC, id ASC LIMIT 50");
+        String rangePlan = queryPlan(database, "SELECT id FROM food_items WHERE expiryEpochDay BETWEEN 0 AND 30 ORDER BY expiryEpochDay ASC, id ASC");
+        String barcodePlan = queryPlan(database, "SELECT id FROM food_items WHERE barcode = '4000000000001'");
+        database.close();
+
+        // The view joins lots to products; the lots' index must still drive the scan and the order
+        assertTrue(keysetPlan, keysetPlan.contains("index_stock_lots_expiryEpochDay_id") && !keysetPlan.contains("TEMP B-TREE"));
+        assertTrue(rangePlan, rangePlan.contains("index_stock_lots_expiryEpochDay_id") && !rangePlan.contains("TEMP B-TREE"));
+        assertTrue(barcodePlan, barcodePlan.contains("index_products_barcode"));
+    }
+
+    /**
+     * Waits for the pager's current load to be applied and returns the number of rows it holds.
+     */
+    private static int awaitIdle(StashPager pager) {
+        int[] state = new int[2];
+        long deadline = SystemClock.elapsedRealtime() + 10_000;
+        do {
+            SystemClock.sleep(10);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+                state[0] = pager.isLoading() ? 1 : 0;
+                state[1] = pager.getRowCount();
+            });
+        } while (state[0] == 1 && SystemClock.elapsedRealtime() < deadline);
+        assertEquals("Pager still loading", 0, state[0]);
+        return state[1];
+    }
+
+    private static String queryPlan(AppDatabase database, String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase().query("EXPLAIN QUERY PLAN " + sql)) {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private PageMeasurement measureFirstPage(int rowCount) {
+        AppDatabase database = createDatabase(rowCount);
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = SystemClock.elapsedRealtime();
+
+        List<FoodListRow> page = database.foodItemDao().getListRowsAfter(Integer.MIN_VALUE, Long.MIN_VALUE, StashPager.PAGE_SIZE);
+
+        long millis = SystemClock.elapsedRealtime() - start;
+        long heapBytes = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+        database.close();
+        return new PageMeasurement(page.size(), millis, heapBytes);
+    }
+
+    private AppDatabase createDatabase(int rowCount) {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        AppDatabase database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        Random random = new Random(rowCount);
+        database.runInTransaction(() -> {
+            for (int i = 0; i < rowCount; i++) {
+                FoodItem item = new FoodItem("Product " + i, "Brand " + (i % 100), "", String.valueOf(4000000000000L + i),
+                        1 + random.nextInt(28), 1 + random.nextInt(12), 2025 + random.nextInt(5), 1 + random.nextInt(10));
+                database.foodItemDao().insert(item);
+            }
+        });
+        return database;
+    }
+
+    private static class TestOwner implements LifecycleOwner {
+        final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return registry;
+        }
+    }
+
+    private static class PageMeasurement {
+        final int rows;
+        final long millis;
+        final long heapBytes;
+
+        PageMeasurement(int rows, long millis, long heapBytes) {
+            this.rows = rows;
+            this.millis = millis;
+            this.heapBytes = heapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows in " + millis + " ms, " + heapBytes + " B heap";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures search-as-you-type queries against a synthetic stash of 50k items and checks that the
+ * full-text index stays in sync with inserts, updates and deletes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StashSearchPerformanceTest {
+    private static final String TAG = "StashSearchPerformance";
+    private static final int ROW_COUNT = 50_000;
+    // A query has to sort all of its matches by expiry before the limit applies
+    private static final long BASE_BUDGET_MICROS = 5_000;
+    private static final long BUDGET_MICROS_PER_MATCH = 2;
+    private static final String[] WORDS = {
+            "tomatoes", "pasta", "rice", "beans", "lentils", "tuna", "corn", "peas", "soup", "sauce",
+            "olives", "peaches", "pineapple", "coconut", "chickpeas", "noodles", "flour", "sugar", "oats", "honey"};
+
+    private static AppDatabase database;
+
+    @BeforeClass
+    public static void createDatabase() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        Random random = new Random(ROW_COUNT);
+        database.runInTransaction(() -> {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                // Word i % 1000 makes every name unique-ish, like a real catalogue of products
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " variety" + (i % 1000);
+                FoodItem item = new FoodItem(name, "Brand" + (i % 500), "", String.valueOf(4000000000000L + i),
+                        1 + random.nextInt(28), 1 + random.nextInt(12), 2025 + random.nextInt(5), 1 + random.nextInt(10));
+                database.foodItemDao().insert(item);
+            }
+        });
+    }
+
+    @AfterClass
+    public static void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    public void typedQueriesStayFast() {
+        String[] typed = {"va", "variety12", "variety123", "brand4", "brand42", "4000000012", "40000000123"};
+        FoodItemDao dao = database.foodItemDao();
+        // Warm up the page cache and the statement
+        dao.search(StashSearch.toMatchQuery("variety1"), StashPager.SEARCH_LIMIT);
+
+        for (String text : typed) {
+            String matchQuery = StashSearch.toMatchQuery(text);
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<FoodListRow> rows = dao.search(matchQuery, StashPager.SEARCH_LIMIT);
+            long micros = (SystemClock.elapsedRealtimeNanos() - start) / 1_000;
+            int matches = countMatches(matchQuery);
+            long budget = BASE_BUDGET_MICROS + matches * BUDGET_MICROS_PER_MATCH;
+            Log.i(TAG, "'" + text + "': " + rows.size() + " of " + matches + " matching rows in " + micros + " us");
+            assertTrue("'" + text + "' took " + micros + " us for " + matches + " matches, budget " + budget + " us", micros < budget);
+        }
+    }
+
+    /**
+     * Counts all rows the search expression matches, not just the ones within the limit.
+     */
+    private static int countMatches(String matchQuery) {
+        String sql = "SELECT COUNT(*) FROM products_fts JOIN stock_lots ON stock_lots.productId = products_fts.rowid "
+                + "WHERE products_fts MATCH ?";
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase().query(sql, new Object[]{matchQuery})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    @Test
+    public void indexFollowsWrites() {
+        FoodItemDao dao = database.foodItemDao();
+        long id = dao.insert(new FoodItem("Geschaelte Tomaten", "Stash Farms", "", "4099999999999", 1, 6, 2027, 1));
+        assertEquals(1, dao.search(StashSearch.toMatchQuery("geschael tom"), 10).size());
+
+        dao.updateMetadata(id, "Passierte Tomaten", "Stash Farms", "");
+        assertEquals(0, dao.search(StashSearch.toMatchQuery("geschael"), 10).size());
+        assertEquals(1, dao.search(StashSearch.toMatchQuery("passiert"), 10).size());
+
+        dao.delete(dao.getById(id));
+        assertEquals(0, dao.search(StashSearch.toMatchQuery("passiert"), 10).size());
+    }
+}
@@ -1,10 +1,39 @@
 package com.github.JohannesLipp.TheStash;
 
+import android.content.Context;
+
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
-@Database(entities = {FoodItem.class}, version = 5, exportSchema = false)
+@Database(entities = {Product.class, StockLot.class, ProductImage.class, CachedProduct.class, ProductFts.class, CatalogProduct.class},
+        views = {FoodItem.class}, version = 13, exportSchema = false)
 
 public abstract class AppDatabase extends RoomDatabase {
+    private static volatile AppDatabase instance;
+
+    /**
+     * Returns the app's database. All screens share one instance, so writes made by one are seen
+     * by the invalidation observers of the others.
+     */
+    public static AppDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AppDatabase.class) {
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, Constants.DATABASE_NAME)
+                            .addMigrations(Migrations.ALL)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+
     public abstract FoodItemDao foodItemDao();
+
+    public abstract ProductImageDao productImageDao();
+
+    public abstract ProductCacheDao productCacheDao();
+
+    public abstract CatalogProductDao catalogProductDao();
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.util.Log;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * App-wide background execution. Work is split by the resource it waits on, so slow network
+ * requests never hold up database access or thumbnail decoding.
+ */
+public class AppExecutors {
+
+    private static final String TAG = "AppExecutors";
+
+    // Room serializes writes anyway, a second thread lets reads proceed alongside a write
+    private static final TaskPool DB = new TaskPool("db", 2, 256, new ThreadPoolExecutor.AbortPolicy());
+    private static final TaskPool NETWORK = new TaskPool("network", 4, 128, new ThreadPoolExecutor.AbortPolicy());
+    // When decoding falls behind, the oldest queued thumbnails are most likely scrolled off screen
+    private static final TaskPool DECODE = new TaskPool("decode", 2, 64, new TaskPool.CancelOldestPolicy());
+    // Imports and exports run for seconds to minutes; one at a time, and never on the db pool's threads
+    private static final TaskPool BULK = new TaskPool("bulk", 1, 4, new ThreadPoolExecutor.AbortPolicy());
+
+    public static TaskPool db() {
+        return DB;
+    }
+
+    public static TaskPool network() {
+        return NETWORK;
+    }
+
+    public static TaskPool decode() {
+        return DECODE;
+    }
+
+    /**
+     * For long-running imports and exports, so they never hold up the database access the
+     * list and dialogs wait for.
+     */
+    public static TaskPool bulk() {
+        return BULK;
+    }
+
+    public static void logStats() {
+        Log.d(TAG, DB + ", " + NETWORK + ", " + DECODE + ", " + BULK);
+    }
+}
@@ -3,9 +3,15 @@ package com.github.JohannesLipp.TheStash;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.OnBackPressedCallback;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
@@ -16,11 +22,10 @@ import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
 
@@ -30,12 +35,26 @@ import java.util.concurrent.Executors;
 public class BarcodeScannerActivity extends AppCompatActivity {
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
     private static final String TAG = "BarcodeScannerActivity";
+
+    // Continuous mode keeps scanning and adds every new barcode with the given expiry date
+    public static final String EXTRA_CONTINUOUS = "continuous";
+    public static final String EXTRA_EXPIRY_DAY = "expiryDay";
+    public static final String EXTRA_EXPIRY_MONTH = "expiryMonth";
+    public static final String EXTRA_EXPIRY_YEAR = "expiryYear";
+    public static final String EXTRA_SCANNED_COUNT = "scannedCount";
+
     private PreviewView previewView;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     private ExecutorService cameraExecutor;
     private BarcodeScanner barcodeScanner;
+    private final ScannerConfig scannerConfig = ScannerConfig.GROCERY; // Must match the shared scanner of ScannerWarmup
+    private final FrameRegion frameRegion = new FrameRegion(scannerConfig);
+    private final ScanFrameStats frameStats = new ScanFrameStats();
 
     private boolean isBarcodeDetected = false; // avoids multiple triggers
+    private ScannerViewModel scan;
+    private ScanIngestQueue ingestQueue; // Only set in continuous mode; owned by the view model
+    private TextView txtScanStatus;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,6 +62,30 @@ public class BarcodeScannerActivity extends AppCompatActivity {
 
         setContentView(R.layout.activity_barcode_scanner);
         previewView = findViewById(R.id.viewFinder);
+        showScanRegion(findViewById(R.id.scanRegion));
+
+        scan = new ViewModelProvider(this).get(ScannerViewModel.class);
+        Intent intent = getIntent();
+        if (intent.getBooleanExtra(EXTRA_CONTINUOUS, false)) {
+            if (scan.ingestQueue == null) {
+                scan.ingestQueue = new ScanIngestQueue(AppDatabase.getInstance(this), this,
+                        intent.getIntExtra(EXTRA_EXPIRY_DAY, 1), intent.getIntExtra(EXTRA_EXPIRY_MONTH, 1), intent.getIntExtra(EXTRA_EXPIRY_YEAR, 1970));
+            }
+            ingestQueue = scan.ingestQueue;
+            txtScanStatus = findViewById(R.id.txtScanStatus);
+            txtScanStatus.setVisibility(View.VISIBLE);
+            int scannedBefore = ingestQueue.getScannedCount();
+            txtScanStatus.setText(scannedBefore == 0 ? "Scan items one after another" : scannedBefore + " scanned");
+            Button btnDone = findViewById(R.id.btnDone);
+            btnDone.setVisibility(View.VISIBLE);
+            btnDone.setOnClickListener(v -> finishContinuousScan());
+            getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
+                @Override
+                public void handleOnBackPressed() {
+                    finishContinuousScan();
+                }
+            });
+        }
 
         cameraExecutor = Executors.newSingleThreadExecutor();
         checkCameraPermissionAndStartCamera();
@@ -79,16 +122,9 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     }
 
     private void startCamera() {
-        cameraProviderFuture = ProcessCameraProvider.getInstance(this);
-
-        // Configure BarcodeScanner (optional, but good for specifying formats)
-        BarcodeScannerOptions options =
-                new BarcodeScannerOptions.Builder()
-                        .setBarcodeFormats(
-                                Barcode.FORMAT_ALL_FORMATS // Or specify particular formats like EAN_13, QR_CODE, etc.
-                        )
-                        .build();
-        barcodeScanner = BarcodeScanning.getClient(options);
+        // Both are usually ready already, prepared by MainActivity while it was idle
+        cameraProviderFuture = ScannerWarmup.getCameraProvider(this);
+        barcodeScanner = ScannerWarmup.acquireScanner();
 
         cameraProviderFuture.addListener(() -> {
             try {
@@ -108,7 +144,7 @@ public class BarcodeScannerActivity extends AppCompatActivity {
 
         ImageAnalysis imageAnalysis =
                 new ImageAnalysis.Builder()
-                        //.setTargetResolution(new Size(1280, 720)) // Optional: set target resolution
+                        .setResolutionSelector(scannerConfig.createResolutionSelector())
                         .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST) // Process only the latest frame
                         .build();
 
@@ -128,9 +164,23 @@ public class BarcodeScannerActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Sizes the on-screen frame to the analysed region, so users know where to hold the barcode.
+     */
+    private void showScanRegion(View scanRegion) {
+        previewView.post(() -> {
+            ViewGroup.LayoutParams params = scanRegion.getLayoutParams();
+            params.width = Math.round(previewView.getWidth() * scannerConfig.getRegionWidthFraction());
+            params.height = Math.round(previewView.getHeight() * scannerConfig.getRegionHeightFraction());
+            scanRegion.setLayoutParams(params);
+        });
+    }
+
     private void processImageProxy(BarcodeScanner scanner, ImageProxy imageProxy) {
-        @SuppressWarnings("UnsafeOptInUsageError")
-        InputImage inputImage = InputImage.fromMediaImage(imageProxy.getImage(), imageProxy.getImageInfo().getRotationDegrees());
+        long frameStart = System.nanoTime();
+        // Only the center region goes to the detector; the frame buffer is reused once this frame is closed
+        InputImage inputImage = frameRegion.crop(imageProxy);
+        long detectStart = System.nanoTime();
 
         scanner.process(inputImage)
                 .addOnSuccessListener(barcodes -> {
@@ -138,6 +188,13 @@ public class BarcodeScannerActivity extends AppCompatActivity {
                         imageProxy.close(); // Make sure to close if already detected
                         return;
                     }
+                    if (ingestQueue != null) {
+                        // Runs on the main thread; the camera stays bound for the next item
+                        for (Barcode barcode : barcodes) {
+                            onContinuousScan(barcode.getRawValue());
+                        }
+                        return;
+                    }
                     for (Barcode barcode : barcodes) {
                         String rawValue = barcode.getRawValue();
                         if (rawValue != null && !rawValue.isEmpty()) {
@@ -154,20 +211,39 @@ public class BarcodeScannerActivity extends AppCompatActivity {
                                     Log.e(TAG, "Error unbinding camera", e);
                                 }
                             }
-                            barcodeScanner.close(); // Release scanner resources
-
                             break; // Process only the first detected barcode
                         }
                     }
                 })
                 .addOnFailureListener(e -> Log.e(TAG, "Barcode scanning failed: " + e.getMessage(), e))
                 .addOnCompleteListener(task -> {
+                    frameStats.record(detectStart - frameStart, System.nanoTime() - detectStart);
+                    ScannerWarmup.markFirstFrame();
                     // Crucial: Close the ImageProxy in all cases to allow processing of the next frame.
                     // If you don't close it, the camera will stop sending frames.
                     imageProxy.close();
                 });
     }
 
+    private void onContinuousScan(String barcodeValue) {
+        if (barcodeValue == null || barcodeValue.isEmpty()
+                || !scan.deduplicator.accept(barcodeValue, SystemClock.elapsedRealtime())) {
+            return;
+        }
+        Log.d(TAG, "Barcode queued: " + barcodeValue);
+        ingestQueue.add(barcodeValue);
+        txtScanStatus.setText(ingestQueue.getScannedCount() + " scanned, last " + barcodeValue);
+    }
+
+    private void finishContinuousScan() {
+        ingestQueue.flush();
+        Log.i(TAG, "Continuous scan finished: " + ingestQueue.getStats());
+        Intent resultIntent = new Intent();
+        resultIntent.putExtra(EXTRA_SCANNED_COUNT, ingestQueue.getScannedCount());
+        setResult(RESULT_OK, resultIntent);
+        finish();
+    }
+
     private void sendResult(String barcodeValue) {
         // Ensure this runs on the main thread if you are updating UI or finishing activity
         runOnUiThread(() -> {
@@ -183,8 +259,11 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         cameraExecutor.shutdown(); // Shutdown the executor
+        // A continuous scan's last batch is written by the view model once the scan is over
+        frameStats.log();
         if (barcodeScanner != null) {
-            barcodeScanner.close(); // Release ML Kit scanner resources
+            ScannerWarmup.releaseScanner(); // Kept open for the next scan
+            barcodeScanner = null;
         }
         // Unbinding the camera is generally handled by the lifecycle,
         // but explicitly unbinding in onDestroy if the activity is finishing
@@ -0,0 +1,250 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Re-fetches metadata and images for every item in the stash. Items sharing a barcode are looked
+ * up once. At most {@code parallelism} lookups run at a time, requests to each host are spaced by
+ * a minimum interval, and results are written in batched transactions.
+ */
+public class BulkRefresher {
+
+    private static final String TAG = "BulkRefresher";
+
+    private static final int WRITE_BATCH_SIZE = 25;
+
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+
+        void onFinished(int updated, int failed, long elapsedMillis);
+    }
+
+    private final AppDatabase database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int parallelism;
+    private final HostRateLimiter rateLimiter;
+
+    private final Queue<String> pendingBarcodes = new ConcurrentLinkedQueue<>();
+    private final List<RefreshResult> unwrittenResults = new ArrayList<>();
+    private final AtomicInteger activeLookups = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private volatile ProgressListener listener;
+    private int total;
+    private long startedAt;
+    private boolean useCache;
+
+    public BulkRefresher(AppDatabase database, int parallelism, long minRequestIntervalMillis) {
+        this.database = database;
+        this.parallelism = parallelism;
+        this.rateLimiter = new HostRateLimiter(minRequestIntervalMillis);
+    }
+
+    /**
+     * Starts refreshing all items. Progress is reported on the main thread. May only be called once.
+     */
+    public void start(ProgressListener listener) {
+        this.listener = listener;
+        this.startedAt = SystemClock.elapsedRealtime();
+
+        if (!AppExecutors.db().tryExecute(() -> startLookups(database.foodItemDao().getDistinctBarcodes()))) {
+            notifyListener(l -> l.onFinished(0, 0, 0));
+        }
+    }
+
+    /**
+     * Fills in data and pictures for the given barcodes only, e.g. after an import. Unlike
+     * {@link #start(ProgressListener)}, cached product data is used where it is still fresh.
+     * May only be called once.
+     */
+    public void start(ProgressListener listener, Collection<String> barcodes) {
+        this.listener = listener;
+        this.startedAt = SystemClock.elapsedRealtime();
+        this.useCache = true;
+
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(barcodes));
+        if (!AppExecutors.db().tryExecute(() -> startLookups(distinct))) {
+            notifyListener(l -> l.onFinished(0, distinct.size(), 0));
+        }
+    }
+
+    private void startLookups(List<String> barcodes) {
+        Log.d(TAG, "Refreshing " + barcodes.size() + " distinct barcodes with parallelism " + parallelism);
+        total = barcodes.size();
+        pendingBarcodes.addAll(barcodes);
+
+        if (barcodes.isEmpty()) {
+            finish();
+            return;
+        }
+        notifyListener(l -> l.onProgress(0, total));
+
+        activeLookups.set(Math.min(parallelism, total));
+        for (int i = 0; i < Math.min(parallelism, total); i++) {
+            scheduleNextLookup();
+        }
+    }
+
+    /**
+     * Reports further progress to the given listener instead, e.g. after the activity that
+     * started the refresh was recreated. Must be called from the main thread.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops starting new lookups. Lookups in progress finish and their results are still written.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void notifyListener(Consumer<ProgressListener> event) {
+        mainHandler.post(() -> event.accept(listener));
+    }
+
+    /**
+     * Each of the {@code parallelism} lookup slots runs one barcode at a time and then schedules
+     * itself again, so the network pool is never flooded and other requests can interleave.
+     */
+    private void scheduleNextLookup() {
+        String barcode = cancelled.get() ? null : pendingBarcodes.poll();
+        if (barcode == null) {
+            closeLookupSlot();
+            return;
+        }
+
+        boolean queued = AppExecutors.network().tryExecute(() -> {
+            refreshBarcode(barcode);
+            scheduleNextLookup();
+        });
+        if (!queued) {
+            Log.w(TAG, "Network pool saturated, closing one refresh slot");
+            pendingBarcodes.add(barcode);
+            closeLookupSlot();
+        }
+    }
+
+    /**
+     * Finishes the refresh once the last lookup slot is closed. Runs on a background thread, so
+     * if the database pool is saturated the slot's thread writes the remaining results itself.
+     */
+    private void closeLookupSlot() {
+        if (activeLookups.decrementAndGet() == 0 && !AppExecutors.db().tryExecute(this::finish)) {
+            finish();
+        }
+    }
+
+    private void refreshBarcode(String barcode) {
+        try {
+            OpenFoodFactsResultDTO productData;
+            if (useCache && ProductCache.isFresh(database, barcode)) {
+                productData = ProductCache.lookup(database, barcode);
+            } else {
+                rateLimiter.acquire(OpenFoodFacts.getProductUrl(barcode));
+                // A full refresh always asks the network, the point is to replace cached data
+                productData = useCache ? ProductCache.lookup(database, barcode) : ProductCache.refresh(database, barcode);
+            }
+            if (productData == null) {
+                Log.d(TAG, "Product not found: " + barcode);
+                failed.incrementAndGet();
+            } else {
+                ImageIngestor.Images images = null;
+                if (productData.getImageUrl() != null && !productData.getImageUrl().isEmpty()) {
+                    rateLimiter.acquire(productData.getImageUrl());
+                    images = ItemDataUpdater.downloadImage(productData.getImageUrl());
+                }
+                addResult(new RefreshResult(barcode, productData, images));
+                updated.incrementAndGet();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Refreshing " + barcode + " failed: " + e.getMessage());
+            failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+        }
+
+        int doneNow = done.incrementAndGet();
+        notifyListener(l -> l.onProgress(doneNow, total));
+    }
+
+    private void addResult(RefreshResult result) {
+        List<RefreshResult> batch = null;
+        synchronized (unwrittenResults) {
+            unwrittenResults.add(result);
+            if (unwrittenResults.size() >= WRITE_BATCH_SIZE) {
+                batch = new ArrayList<>(unwrittenResults);
+                unwrittenResults.clear();
+            }
+        }
+        if (batch != null) {
+            // Written on the calling lookup thread, so every batch is stored before the slot finishes
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<RefreshResult> batch) {
+        database.runInTransaction(() -> {
+            FoodItemDao dao = database.foodItemDao();
+            for (RefreshResult result : batch) {
+                OpenFoodFactsResultDTO productData = result.productData;
+                dao.updateMetadataByBarcode(result.barcode, productData.getProductName(), productData.getBrands(), productData.getImageUrl());
+                if (result.images != null) {
+                    dao.updateImageByBarcode(result.barcode, ImageStore.store(database, result.images.detail), ImageStore.store(database, result.images.thumbnail));
+                }
+            }
+        });
+        Log.d(TAG, "Wrote batch of " + batch.size() + " refreshed products");
+    }
+
+    private void finish() {
+        List<RefreshResult> batch;
+        synchronized (unwrittenResults) {
+            batch = new ArrayList<>(unwrittenResults);
+            unwrittenResults.clear();
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+        ImageStore.deleteUnreferenced(database);
+        failed.addAndGet(pendingBarcodes.size()); // Left over if cancelled or the network pool rejected work
+        pendingBarcodes.clear();
+
+        long elapsedMillis = SystemClock.elapsedRealtime() - startedAt;
+        Log.i(TAG, "Refresh finished: " + updated.get() + " updated, " + failed.get() + " failed in " + elapsedMillis + " ms");
+        int updatedCount = updated.get();
+        int failedCount = failed.get();
+        notifyListener(l -> l.onFinished(updatedCount, failedCount, elapsedMillis));
+    }
+
+    private static class RefreshResult {
+        final String barcode;
+        final OpenFoodFactsResultDTO productData;
+        final ImageIngestor.Images images;
+
+        RefreshResult(String barcode, OpenFoodFactsResultDTO productData, ImageIngestor.Images images) {
+            this.barcode = barcode;
+            this.productData = productData;
+            this.images = images;
+        }
+    }
+}
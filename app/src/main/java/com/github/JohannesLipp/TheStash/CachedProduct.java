@@ -0,0 +1,59 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Open Food Facts lookup result cached by barcode. Products unknown to Open Food Facts are cached
+ * too, with {@link #isFound()} set to false, so they are not requested again on every scan.
+ */
+@Entity(tableName = "product_cache")
+public class CachedProduct {
+    @PrimaryKey
+    @NonNull
+    private final String barcode;
+
+    private final String name;
+    private final String brands;
+    private final String imageUrl;
+    private final boolean found;
+    private final long fetchedAt;
+
+    public CachedProduct(@NonNull String barcode, String name, String brands, String imageUrl, boolean found, long fetchedAt) {
+        this.barcode = barcode;
+        this.name = name;
+        this.brands = brands;
+        this.imageUrl = imageUrl;
+        this.found = found;
+        this.fetchedAt = fetchedAt;
+    }
+
+    @NonNull
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrands() {
+        return brands;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    /**
+     * Time of the lookup in milliseconds since the epoch.
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
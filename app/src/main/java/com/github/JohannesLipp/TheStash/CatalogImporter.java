@@ -0,0 +1,136 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Imports an Open Food Facts export into the offline {@code catalog_products} table. The file is
+ * read by {@link CatalogReader} and written in large batched transactions, so exports of several
+ * hundred thousand products are imported with bounded memory.
+ */
+public class CatalogImporter {
+
+    private static final String TAG = "CatalogImporter";
+
+    private static final int BATCH_SIZE = 2000;
+
+    public interface ProgressListener {
+        void onProgress(long imported);
+
+        void onFinished(long imported, long elapsedMillis);
+
+        /**
+         * @param imported Products kept from batches written before the import was cancelled.
+         */
+        void onCancelled(long imported);
+
+        void onError(String errorMessage);
+    }
+
+    /** Thrown out of the reader's sink to stop reading once the import is cancelled. */
+    private static class CancelledException extends IOException {
+    }
+
+    private final AppDatabase database;
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile ProgressListener listener;
+
+    public CatalogImporter(AppDatabase database, Context context) {
+        this.database = database;
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts importing the given document on the bulk pool. Progress is reported on the main
+     * thread. May only be called once.
+     *
+     * @param countryTag Only products sold in this country are imported, e.g. {@code en:germany};
+     *                   null imports all products.
+     */
+    public void start(Uri uri, @Nullable String countryTag, ProgressListener listener) {
+        this.listener = listener;
+        boolean queued = AppExecutors.bulk().tryExecute(() -> {
+            long startedAt = SystemClock.elapsedRealtime();
+            CatalogReader reader = new CatalogReader(countryTag);
+            List<CatalogProduct> batch = new ArrayList<>(BATCH_SIZE);
+            long[] imported = {0};
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new IOException("Failed to open " + uri);
+                }
+                reader.read(in, product -> {
+                    if (cancelled.get()) {
+                        throw new CancelledException();
+                    }
+                    batch.add(product);
+                    if (batch.size() == BATCH_SIZE) {
+                        writeBatch(batch);
+                        imported[0] += batch.size();
+                        batch.clear();
+
+                        long done = imported[0];
+                        notifyListener(l -> l.onProgress(done));
+                    }
+                });
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    imported[0] += batch.size();
+                }
+
+                long elapsed = SystemClock.elapsedRealtime() - startedAt;
+                long total = imported[0];
+                Log.i(TAG, "Imported " + total + " catalog products (read " + reader.getProductsRead() + ", skipped "
+                        + reader.getProductsSkipped() + ") in " + elapsed + " ms, " + (total * 1000L / Math.max(1, elapsed)) + " products/s");
+                notifyListener(l -> l.onFinished(total, elapsed));
+            } catch (CancelledException e) {
+                long kept = imported[0]; // Batches written so far are kept
+                Log.i(TAG, "Catalog import cancelled, kept " + kept + " products");
+                notifyListener(l -> l.onCancelled(kept));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error importing product catalog", e);
+                notifyListener(l -> l.onError(e.getMessage()));
+            }
+        });
+        if (!queued) {
+            notifyListener(l -> l.onError(TaskPool.BUSY_MESSAGE));
+        }
+    }
+
+    /**
+     * Reports further progress to the given listener instead, e.g. after the activity that
+     * started the import was recreated. Must be called from the main thread.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops the import after the current batch. Batches written so far are kept.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void notifyListener(Consumer<ProgressListener> event) {
+        mainHandler.post(() -> event.accept(listener));
+    }
+
+    private void writeBatch(List<CatalogProduct> batch) {
+        database.runInTransaction(() -> database.catalogProductDao().insertAll(batch));
+    }
+}
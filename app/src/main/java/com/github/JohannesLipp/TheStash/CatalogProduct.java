@@ -0,0 +1,54 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Product from a locally imported Open Food Facts export, used to name scanned items without a
+ * network connection.
+ */
+@Entity(tableName = "catalog_products")
+public class CatalogProduct {
+    @PrimaryKey
+    @NonNull
+    private final String barcode;
+
+    private final String name;
+    private final String brands;
+    private final String imageUrl;
+
+    public CatalogProduct(@NonNull String barcode, String name, String brands, String imageUrl) {
+        this.barcode = barcode;
+        this.name = name;
+        this.brands = brands;
+        this.imageUrl = imageUrl;
+    }
+
+    @NonNull
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrands() {
+        return brands;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CatalogProduct{" +
+                "barcode='" + barcode + '\'' +
+                ", name='" + name + '\'' +
+                ", brands='" + brands + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface CatalogProductDao {
+
+    // Re-importing a newer export replaces the products it contains
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<CatalogProduct> products);
+
+    @Query("SELECT * FROM catalog_products WHERE barcode = :barcode")
+    CatalogProduct get(String barcode);
+
+    @Query("SELECT COUNT(*) FROM catalog_products")
+    int count();
+
+    @Query("DELETE FROM catalog_products")
+    void deleteAll();
+}
@@ -0,0 +1,234 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads products from an Open Food Facts export, one at a time, so files of any size can be read
+ * with constant memory. Both published formats are supported: the tab-separated "CSV" export
+ * with a header row, and the JSONL export with one product object per line. The format is
+ * detected from the first character.
+ */
+public class CatalogReader {
+
+    private static final int DETECT_BUFFER_SIZE = 64 * 1024;
+    private static final String FALLBACK_LANGUAGE = "de";
+
+    public interface Sink {
+        void accept(CatalogProduct product) throws IOException;
+    }
+
+    private final String countryTag;
+    private final String localizedNameField;
+    private long productsRead;
+    private long productsSkipped;
+
+    /**
+     * @param countryTag Only products sold in this country are read, as an Open Food Facts tag
+     *                   such as {@code en:germany}; null reads all products.
+     */
+    public CatalogReader(@Nullable String countryTag) {
+        this.countryTag = countryTag;
+        this.localizedNameField = "product_name_" + Locale.getDefault().getLanguage();
+    }
+
+    /**
+     * Reads all products from the stream and passes those matching the country filter and having
+     * a barcode to the sink.
+     */
+    public void read(InputStream in, Sink sink) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, DETECT_BUFFER_SIZE);
+        buffered.mark(DETECT_BUFFER_SIZE);
+        int first;
+        do {
+            first = buffered.read();
+        } while (first != -1 && Character.isWhitespace(first));
+        buffered.reset();
+
+        if (first == '{') {
+            readJsonLines(buffered, sink);
+        } else if (first != -1) {
+            readTabSeparated(buffered, sink);
+        }
+    }
+
+    /**
+     * Products read from the file, including those skipped.
+     */
+    public long getProductsRead() {
+        return productsRead;
+    }
+
+    /**
+     * Products skipped because they have no barcode or are not sold in the filtered country.
+     */
+    public long getProductsSkipped() {
+        return productsSkipped;
+    }
+
+    private void readTabSeparated(InputStream in, Sink sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        List<String> columns = Arrays.asList(header.split("\t", -1));
+        int code = columns.indexOf("code");
+        int productName = columns.indexOf("product_name");
+        int localizedName = columns.indexOf(localizedNameField);
+        int fallbackName = columns.indexOf("product_name_" + FALLBACK_LANGUAGE);
+        int brands = columns.indexOf("brands");
+        int imageUrl = columns.indexOf("image_url");
+        int countries = columns.indexOf("countries_tags");
+        if (code < 0) {
+            throw new IOException("Not an Open Food Facts export: no \"code\" column");
+        }
+        if (countryTag != null && countries < 0) {
+            throw new IOException("Export has no \"countries_tags\" column to filter by");
+        }
+        int lastNeeded = max(code, productName, localizedName, fallbackName, brands, imageUrl, countries);
+
+        String[] fields = new String[lastNeeded + 1];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            productsRead++;
+            splitTabs(line, fields);
+            if (countryTag != null && !containsTag(field(fields, countries).split(","), countryTag)) {
+                productsSkipped++;
+                continue;
+            }
+            emit(sink, field(fields, code), firstNonEmpty(field(fields, localizedName), field(fields, fallbackName), field(fields, productName)),
+                    field(fields, brands), field(fields, imageUrl));
+        }
+    }
+
+    private void readJsonLines(InputStream in, Sink sink) throws IOException {
+        // A parser reads consecutive root-level objects, so the whole file is one token stream
+        try (JsonParser parser = Json.MAPPER.getFactory().createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected one JSON object per line at " + parser.getCurrentLocation());
+                }
+                productsRead++;
+                readJsonProduct(parser, sink);
+            }
+        }
+    }
+
+    private void readJsonProduct(JsonParser parser, Sink sink) throws IOException {
+        String code = null;
+        String productName = null;
+        String localizedName = null;
+        String fallbackName = null;
+        String brands = null;
+        String imageUrl = null;
+        List<String> countries = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("code".equals(field)) {
+                code = parser.getValueAsString();
+            } else if ("product_name".equals(field)) {
+                productName = parser.getValueAsString();
+            } else if (localizedNameField.equals(field)) {
+                localizedName = parser.getValueAsString();
+            } else if (("product_name_" + FALLBACK_LANGUAGE).equals(field)) {
+                fallbackName = parser.getValueAsString();
+            } else if ("brands".equals(field)) {
+                brands = parser.getValueAsString();
+            } else if ("image_url".equals(field)) {
+                imageUrl = parser.getValueAsString();
+            } else if ("countries_tags".equals(field) && value == JsonToken.START_ARRAY) {
+                countries = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    countries.add(parser.getValueAsString());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (countryTag != null && (countries == null || !countries.contains(countryTag))) {
+            productsSkipped++;
+            return;
+        }
+        emit(sink, code, firstNonEmpty(localizedName, fallbackName, productName), brands, imageUrl);
+    }
+
+    private void emit(Sink sink, String code, String name, String brands, String imageUrl) throws IOException {
+        if (code == null || code.trim().isEmpty()) {
+            productsSkipped++;
+            return;
+        }
+        sink.accept(new CatalogProduct(code.trim(), emptyToNull(name), emptyToNull(brands), emptyToNull(imageUrl)));
+    }
+
+    /**
+     * Splits the first {@code fields.length} tab-separated columns of the line into the array,
+     * without looking at the hundreds of columns after them.
+     */
+    private static void splitTabs(String line, String[] fields) {
+        int start = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (start > line.length()) {
+                fields[i] = null;
+                continue;
+            }
+            int end = line.indexOf('\t', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+    }
+
+    private static String field(String[] fields, int index) {
+        return index >= 0 && fields[index] != null ? fields[index] : "";
+    }
+
+    private static boolean containsTag(String[] tags, String tag) {
+        for (String candidate : tags) {
+            if (candidate.trim().equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstNonEmpty(String... values) {
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static int max(int... values) {
+        int max = -1;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -3,4 +3,18 @@ package com.github.JohannesLipp.TheStash;
 public class Constants {
     public static final String DATABASE_NAME = "food_database";
     public static final String DATE_FORMAT = "%02d.%02d.%04d";
+
+    // Staging API base URL for products; for V3, it would be "https://staging.openfoodfacts.org/api/v3/product/"
+    public static final String OPEN_FOOD_FACTS_BASE_URL = "https://staging.openfoodfacts.org/api/v2/product/";
+    public static final String HTTP_USER_AGENT = "TheStash/1.0 (Android; https://github.com/JohannesLipp/The-Stash)";
+    public static final int HTTP_CONNECT_TIMEOUT_MS = 10_000;
+    public static final int HTTP_READ_TIMEOUT_MS = 15_000;
+
+    // Bulk refresh of all items: concurrent lookups, and minimum spacing of requests per host
+    public static final int REFRESH_PARALLELISM = 4;
+    public static final long REFRESH_MIN_REQUEST_INTERVAL_MS = 100;
+
+    // How long Open Food Facts lookups are served from the local product cache
+    public static final long PRODUCT_CACHE_TTL_MS = 30L * 24 * 60 * 60 * 1000;
+    public static final long PRODUCT_CACHE_NEGATIVE_TTL_MS = 24L * 60 * 60 * 1000;
 }
@@ -0,0 +1,220 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Exports all items as a JSON array to the public "Downloads" directory. Items are read in keyset
+ * chunks and streamed through a {@link JsonGenerator} straight into the file, so memory use does
+ * not grow with the size of the stash.
+ */
+public class DatabaseExporter {
+
+    private static final String TAG = "DatabaseExporter";
+
+    private static final int CHUNK_SIZE = 200;
+
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+
+        void onFinished(int exported, long elapsedMillis);
+
+        void onCancelled();
+
+        void onError(String errorMessage);
+    }
+
+    private final AppDatabase database;
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile ProgressListener listener;
+
+    // Flushing after every item would turn each row into a separate write to the file
+    private final ObjectWriter itemWriter = Json.MAPPER.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    public DatabaseExporter(AppDatabase database, Context context) {
+        this.database = database;
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts the export on the bulk pool. Progress is reported on the main thread. May only be
+     * called once.
+     *
+     * @param displayName The display name of the file in Downloads.
+     */
+    public void start(String displayName, ProgressListener listener) {
+        this.listener = listener;
+        if (!AppExecutors.bulk().tryExecute(() -> export(displayName))) {
+            notifyListener(l -> l.onError(TaskPool.BUSY_MESSAGE));
+        }
+    }
+
+    /**
+     * Reports further progress to the given listener instead, e.g. after the activity that
+     * started the export was recreated. Must be called from the main thread.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops the export after the current chunk. The partially written file is deleted.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void notifyListener(Consumer<ProgressListener> event) {
+        mainHandler.post(() -> event.accept(listener));
+    }
+
+    private void export(String displayName) {
+        long startedAt = SystemClock.elapsedRealtime();
+        ExportTarget target = null;
+        try {
+            target = ExportTarget.create(context, displayName);
+            int exported = writeItems(target.out);
+            target.out.close();
+
+            if (cancelled.get()) {
+                Log.i(TAG, "Export cancelled after " + exported + " items");
+                target.delete(context);
+                notifyListener(ProgressListener::onCancelled);
+                return;
+            }
+
+            long elapsed = SystemClock.elapsedRealtime() - startedAt;
+            Log.i(TAG, "Exported " + exported + " items to " + target.location + " in " + elapsed + " ms");
+            notifyListener(l -> l.onFinished(exported, elapsed));
+        } catch (IOException e) {
+            Log.e(TAG, "Error exporting database as JSON", e);
+            if (target != null) {
+                target.closeQuietly();
+                target.delete(context);
+            }
+            notifyListener(l -> l.onError(e.getMessage()));
+        }
+    }
+
+    private int writeItems(OutputStream out) throws IOException {
+        FoodItemDao dao = database.foodItemDao();
+        int total = dao.count();
+        int exported = 0;
+        notifyListener(l -> l.onProgress(0, total));
+
+        try (JsonGenerator generator = Json.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+
+            int afterExpiryEpochDay = Integer.MIN_VALUE;
+            long afterId = Long.MIN_VALUE;
+            while (!cancelled.get()) {
+                List<FoodItem> chunk = dao.getItemsAfter(afterExpiryEpochDay, afterId, CHUNK_SIZE);
+                for (FoodItem item : chunk) {
+                    itemWriter.writeValue(generator, item);
+                }
+                exported += chunk.size();
+
+                int done = exported;
+                notifyListener(l -> l.onProgress(done, Math.max(done, total)));
+                if (chunk.size() < CHUNK_SIZE) {
+                    break;
+                }
+
+                FoodItem last = chunk.get(chunk.size() - 1);
+                afterExpiryEpochDay = last.getExpiryEpochDay();
+                afterId = last.getId();
+            }
+
+            generator.writeEndArray();
+        }
+        return exported;
+    }
+
+    /**
+     * The file being written: a MediaStore record on Android 10+, a plain file before.
+     */
+    private static class ExportTarget {
+        final OutputStream out;
+        final String location;
+        private final Uri uri;
+        private final File file;
+
+        private ExportTarget(OutputStream out, Uri uri, File file) {
+            this.out = out;
+            this.uri = uri;
+            this.file = file;
+            this.location = uri != null ? uri.toString() : file.getAbsolutePath();
+        }
+
+        static ExportTarget create(Context context, String displayName) throws IOException {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                // For older versions (pre-Q), direct file access.
+                // This requires WRITE_EXTERNAL_STORAGE permission.
+                File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+                if (!downloadsDir.exists() && !downloadsDir.mkdirs()) {
+                    throw new IOException("Failed to create Downloads directory (pre-Q).");
+                }
+                File destFile = new File(downloadsDir, displayName);
+                return new ExportTarget(new FileOutputStream(destFile), null, destFile);
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+            values.put(MediaStore.MediaColumns.MIME_TYPE, "application/json");
+            values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
+            Uri collectionUri = MediaStore.Downloads.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+
+            Uri itemUri = context.getContentResolver().insert(collectionUri, values);
+            if (itemUri == null) {
+                throw new IOException("Failed to create new MediaStore record for " + displayName);
+            }
+            OutputStream out = context.getContentResolver().openOutputStream(itemUri);
+            if (out == null) {
+                context.getContentResolver().delete(itemUri, null, null);
+                throw new IOException("Failed to open output stream for " + itemUri);
+            }
+            return new ExportTarget(out, itemUri, null);
+        }
+
+        void closeQuietly() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close export output", e);
+            }
+        }
+
+        void delete(Context context) {
+            if (uri != null) {
+                context.getContentResolver().delete(uri, null, null);
+            } else if (!file.delete()) {
+                Log.w(TAG, "Failed to delete incomplete export " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Imports a JSON export written by {@link DatabaseExporter}. The file is stream-parsed and items
+ * are inserted in batches, so neither the file nor the item list is ever held in memory as a
+ * whole. Pictures are not part of an export; the barcodes that need them are handed back for a
+ * batched refresh afterwards.
+ * <p>
+ * A {@link Mode#REPLACE} import runs in a single transaction: the current stash is only replaced
+ * once the whole file has been read, and a cancelled or failed import leaves it untouched.
+ */
+public class DatabaseImporter {
+
+    private static final String TAG = "DatabaseImporter";
+
+    private static final int BATCH_SIZE = 500;
+
+    public enum Mode {
+        /** Keeps the current items and adds the imported ones as new items. */
+        MERGE,
+        /** Removes all current items and restores the imported ones with their original ids. */
+        REPLACE
+    }
+
+    public interface ProgressListener {
+        void onProgress(int imported);
+
+        void onFinished(int imported, long elapsedMillis, List<String> barcodesToEnrich);
+
+        /**
+         * @param imported Items kept from batches written before the import was cancelled; always
+         *                 0 for {@link Mode#REPLACE}, which is rolled back.
+         */
+        void onCancelled(int imported);
+
+        void onError(String errorMessage);
+    }
+
+    private final AppDatabase database;
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile ProgressListener listener;
+    private int imported; // Written batches; only accessed by the import thread
+
+    public DatabaseImporter(AppDatabase database, Context context) {
+        this.database = database;
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts importing the given document in the background. Progress is reported on the main
+     * thread. May only be called once.
+     */
+    public void start(Uri uri, Mode mode, ProgressListener listener) {
+        this.listener = listener;
+        boolean queued = AppExecutors.bulk().tryExecute(() -> {
+            long startedAt = SystemClock.elapsedRealtime();
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new IOException("Failed to open " + uri);
+                }
+                Set<String> barcodes = new LinkedHashSet<>();
+                importItems(in, mode, barcodes);
+                if (mode == Mode.REPLACE) {
+                    ImageStore.deleteUnreferenced(database);
+                }
+
+                long elapsed = SystemClock.elapsedRealtime() - startedAt;
+                int total = imported;
+                Log.i(TAG, "Imported " + total + " items (" + mode + ") in " + elapsed + " ms, "
+                        + (total * 1000L / Math.max(1, elapsed)) + " items/s");
+                List<String> barcodesToEnrich = new ArrayList<>(barcodes);
+                notifyListener(l -> l.onFinished(total, elapsed, barcodesToEnrich));
+            } catch (CancellationException e) {
+                int kept = mode == Mode.REPLACE ? 0 : imported;
+                Log.i(TAG, "Import (" + mode + ") cancelled, kept " + kept + " items");
+                notifyListener(l -> l.onCancelled(kept));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error importing JSON", e);
+                notifyListener(l -> l.onError(e.getMessage()));
+            }
+        });
+        if (!queued) {
+            notifyListener(l -> l.onError(TaskPool.BUSY_MESSAGE));
+        }
+    }
+
+    /**
+     * Reports further progress to the given listener instead, e.g. after the activity that
+     * started the import was recreated. Must be called from the main thread.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops the import after the current batch. A {@link Mode#MERGE} import keeps the batches
+     * written so far; a {@link Mode#REPLACE} import is rolled back.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    private void notifyListener(Consumer<ProgressListener> event) {
+        mainHandler.post(() -> event.accept(listener));
+    }
+
+    /**
+     * Reads the items array from the stream and writes it in batches. In {@link Mode#REPLACE} the
+     * current items are removed and all batches are written in one transaction.
+     *
+     * @throws CancellationException If the import was cancelled.
+     */
+    private void importItems(InputStream in, Mode mode, Set<String> barcodes) throws IOException {
+        if (mode == Mode.MERGE) {
+            readItems(in, mode, barcodes);
+            return;
+        }
+
+        try {
+            database.runInTransaction(() -> {
+                database.foodItemDao().deleteAll();
+                try {
+                    readItems(in, mode, barcodes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // Rolls back, unwrapped below
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void readItems(InputStream in, Mode mode, Set<String> barcodes) throws IOException {
+        List<FoodItem> batch = new ArrayList<>(BATCH_SIZE);
+
+        try (JsonParser parser = Json.MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Not a stash export: expected a JSON array");
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (cancelled.get()) {
+                    throw new CancellationException();
+                }
+                FoodItem item = Json.MAPPER.readValue(parser, FoodItem.class);
+                if (mode == Mode.MERGE) {
+                    item.setId(0); // Let the database assign new ids
+                }
+                if (item.getBarcode() != null && !item.getBarcode().isEmpty()) {
+                    barcodes.add(item.getBarcode());
+                }
+                batch.add(item);
+
+                if (batch.size() == BATCH_SIZE) {
+                    writeBatch(batch);
+                    int done = imported;
+                    notifyListener(l -> l.onProgress(done));
+                }
+            }
+        }
+
+        if (cancelled.get()) {
+            throw new CancellationException();
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<FoodItem> batch) {
+        database.runInTransaction(() -> database.foodItemDao().insertAll(batch));
+        imported += batch.size();
+        Log.d(TAG, "Wrote batch of " + batch.size() + " imported items");
+        batch.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.util.Calendar;
+
+/**
+ * Converts expiry dates to epoch days (days since 1970-01-01), the form they are indexed and
+ * compared in. Plain arithmetic, since {@code java.time} is not available on all supported
+ * Android versions.
+ */
+public class ExpiryDates {
+
+    /**
+     * Returns the epoch day of the given date in the proleptic Gregorian calendar.
+     *
+     * @param month The month, 1 to 12.
+     */
+    public static int toEpochDay(int year, int month, int day) {
+        // Count years from March so the leap day is the last day of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Returns the epoch day of the current date in the device's time zone.
+     */
+    public static int today() {
+        Calendar calendar = Calendar.getInstance();
+        return toEpochDay(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.JohannesLipp.TheStash;
 
-import android.graphics.BitmapFactory;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,34 +8,90 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class FoodAdapter extends RecyclerView.Adapter<FoodAdapter.FoodViewHolder> {
     private static final String TAG = "FoodAdapter";
 
     public interface OnItemClickListener {
-        void onItemClick(FoodItem item);
+        void onItemClick(FoodListRow item);
     }
 
     public interface OnItemLongClickListener {
-        boolean onItemLongClick(FoodItem item);
+        boolean onItemLongClick(FoodListRow item);
     }
 
-    private List<FoodItem> items = new ArrayList<>();
+    public interface LoadMoreListener {
+        void onLoadMore();
+
+        void onLoadPrevious();
+    }
+
+    // Start loading the next or previous page once the user gets this close to either end of the loaded rows
+    private static final int PREFETCH_DISTANCE = 20;
+
+    // Bit flags describing which parts of a row changed, used as partial rebind payloads
+    static final int CHANGED_NAME = 1;
+    static final int CHANGED_BRAND = 1 << 1;
+    static final int CHANGED_BARCODE = 1 << 2;
+    static final int CHANGED_EXPIRY = 1 << 3;
+    static final int CHANGED_COUNT = 1 << 4;
+    static final int CHANGED_IMAGE = 1 << 5;
+
+    static final DiffUtil.ItemCallback<FoodListRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<FoodListRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FoodListRow oldItem, @NonNull FoodListRow newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull FoodListRow oldItem, @NonNull FoodListRow newItem) {
+            return oldItem.equals(newItem);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull FoodListRow oldItem, @NonNull FoodListRow newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.getName(), newItem.getName())) changes |= CHANGED_NAME;
+            if (!Objects.equals(oldItem.getBrands(), newItem.getBrands())) changes |= CHANGED_BRAND;
+            if (!Objects.equals(oldItem.getBarcode(), newItem.getBarcode())) changes |= CHANGED_BARCODE;
+            if (oldItem.getExpiryEpochDay() != newItem.getExpiryEpochDay()) changes |= CHANGED_EXPIRY;
+            if (oldItem.getCount() != newItem.getCount()) changes |= CHANGED_COUNT;
+            if (!Objects.equals(oldItem.getListImageHash(), newItem.getListImageHash())) changes |= CHANGED_IMAGE;
+            return changes;
+        }
+    };
+
+    private final AsyncListDiffer<FoodListRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final ThumbnailLoader thumbnailLoader;
     private final OnItemClickListener listener;
     private final OnItemLongClickListener longClickListener;
+    private LoadMoreListener loadMoreListener;
 
-    public FoodAdapter(OnItemClickListener listener, OnItemLongClickListener longClickListener) {
+    public FoodAdapter(ThumbnailLoader thumbnailLoader, OnItemClickListener listener, OnItemLongClickListener longClickListener) {
+        this.thumbnailLoader = thumbnailLoader;
         this.listener = listener;
         this.longClickListener = longClickListener;
+        setHasStableIds(true);
+    }
+
+    public void setLoadMoreListener(LoadMoreListener loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
     }
 
-    public void setItems(List<FoodItem> items) {
-        this.items = items;
-        notifyDataSetChanged(); // Consider using DiffUtil for better performance
+    /**
+     * Submits a new list of rows. The difference to the current list is computed in the background
+     * and only changed rows are rebound. The list must not be modified afterwards.
+     */
+    public void setItems(List<FoodListRow> items) {
+        differ.submitList(items);
     }
 
     @NonNull
@@ -44,18 +99,56 @@ public class FoodAdapter extends RecyclerView.Adapter<FoodAdapter.FoodViewHolder
     public FoodViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_food, parent, false);
-        return new FoodViewHolder(v);
+        return new FoodViewHolder(v, thumbnailLoader);
     }
 
     @Override
     public void onBindViewHolder(@NonNull FoodViewHolder holder, int position) {
-        FoodItem item = items.get(position);
+        FoodListRow item = differ.getCurrentList().get(position);
         holder.bind(item, listener, longClickListener);
+        requestMoreIfNeeded(position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull FoodViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        int changes = 0;
+        for (Object payload : payloads) {
+            changes |= (Integer) payload;
+        }
+        FoodListRow item = differ.getCurrentList().get(position);
+        holder.bindChanges(item, changes, listener, longClickListener);
+        requestMoreIfNeeded(position);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull FoodViewHolder holder) {
+        holder.recycle();
+    }
+
+    private void requestMoreIfNeeded(int position) {
+        if (loadMoreListener == null) {
+            return;
+        }
+        if (position >= getItemCount() - PREFETCH_DISTANCE) {
+            loadMoreListener.onLoadMore();
+        } else if (position < PREFETCH_DISTANCE) {
+            loadMoreListener.onLoadPrevious();
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return differ.getCurrentList().size();
     }
 
     public static class FoodViewHolder extends RecyclerView.ViewHolder {
@@ -63,8 +156,11 @@ public class FoodAdapter extends RecyclerView.Adapter<FoodAdapter.FoodViewHolder
 
         ImageView imageViewProduct;
 
-        public FoodViewHolder(@NonNull View itemView) {
+        private final ThumbnailLoader thumbnailLoader;
+
+        public FoodViewHolder(@NonNull View itemView, ThumbnailLoader thumbnailLoader) {
             super(itemView);
+            this.thumbnailLoader = thumbnailLoader;
             txtName = itemView.findViewById(R.id.txtName);
             txtBrand = itemView.findViewById(R.id.txtBrand);
             txtBarcode = itemView.findViewById(R.id.txtBarcode);
@@ -74,23 +170,23 @@ public class FoodAdapter extends RecyclerView.Adapter<FoodAdapter.FoodViewHolder
             imageViewProduct = itemView.findViewById(R.id.imgProduct);
         }
 
-        public void bind(final FoodItem item, final OnItemClickListener listener, final OnItemLongClickListener longClickListener) {
-            txtName.setText("Name: " +item.getName());
-            txtBrand.setText("Brand: " +item.getBrands());
-            txtBarcode.setText("Barcode: " +item.getBarcode());
-            txtExpiry.setText("Expiry: " +item.getExpiryFormatted());
-            txtCount.setText("Count: " + item.getCount());
-
-            if (item.getImageData() != null) {
-                Log.d(TAG, "Image data available");
-                imageViewProduct.setImageBitmap(BitmapFactory.decodeByteArray(item.getImageData(), 0, item.getImageData().length));
-                imageViewProduct.setVisibility(View.VISIBLE);
-                Log.d(TAG, "Image set for item: " + item.getName() + ", Image data length: " + item.getImageData().length + " bytes");
-            } else {
-                Log.d(TAG, "No image data available");
-                imageViewProduct.setVisibility(View.GONE);
-            }
+        public void bind(final FoodListRow item, final OnItemClickListener listener, final OnItemLongClickListener longClickListener) {
+            bindChanges(item, CHANGED_NAME | CHANGED_BRAND | CHANGED_BARCODE | CHANGED_EXPIRY | CHANGED_COUNT | CHANGED_IMAGE,
+                    listener, longClickListener);
+        }
 
+        /**
+         * Updates only the views affected by the given {@code CHANGED_*} flags.
+         */
+        public void bindChanges(final FoodListRow item, int changes, final OnItemClickListener listener, final OnItemLongClickListener longClickListener) {
+            if ((changes & CHANGED_NAME) != 0) txtName.setText("Name: " + item.getName());
+            if ((changes & CHANGED_BRAND) != 0) txtBrand.setText("Brand: " + item.getBrands());
+            if ((changes & CHANGED_BARCODE) != 0) txtBarcode.setText("Barcode: " + item.getBarcode());
+            if ((changes & CHANGED_EXPIRY) != 0) txtExpiry.setText("Expiry: " + item.getExpiryFormatted());
+            if ((changes & CHANGED_COUNT) != 0) txtCount.setText("Count: " + item.getCount());
+            if ((changes & CHANGED_IMAGE) != 0) bindImage(item);
+
+            // Listeners capture the row, so they are refreshed on every bind
             if (longClickListener != null) {
                 itemView.setOnClickListener(v -> listener.onItemClick(item));
             } else {
@@ -102,7 +198,22 @@ public class FoodAdapter extends RecyclerView.Adapter<FoodAdapter.FoodViewHolder
             } else {
                 itemView.setOnLongClickListener(null); // Clear if no listener
             }
+        }
+
+        private void bindImage(final FoodListRow item) {
+            if (item.getListImageHash() != null) {
+                thumbnailLoader.load(imageViewProduct, item.getListImageHash());
+            } else {
+                Log.d(TAG, "No image data available");
+                thumbnailLoader.cancel(imageViewProduct);
+                imageViewProduct.setImageBitmap(null);
+                imageViewProduct.setVisibility(View.GONE);
+            }
+        }
 
+        void recycle() {
+            thumbnailLoader.cancel(imageViewProduct);
+            imageViewProduct.setImageBitmap(null);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,20 +1,29 @@
 package com.github.JohannesLipp.TheStash;
 
 import androidx.annotation.NonNull;
-import androidx.room.Entity;
+import androidx.room.DatabaseView;
 import androidx.room.Ignore;
-import androidx.room.PrimaryKey;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.Locale;
 
+/**
+ * A stock lot together with its product data, as shown in the list and exported. Read from the
+ * {@code food_items} view; {@link FoodItemDao#insert(FoodItem)} splits new items into product and
+ * lot again. The id is the id of the lot.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
-@Entity(tableName = "food_items")
+@DatabaseView(viewName = "food_items", value = FoodItem.VIEW_QUERY)
 public class FoodItem {
-    @PrimaryKey(autoGenerate = true)
+    static final String VIEW_QUERY = "SELECT stock_lots.id AS id, products.name AS name, products.brands AS brands, products.imageUrl AS imageUrl, " +
+            "products.barcode AS barcode, stock_lots.expiryDay AS expiryDay, stock_lots.expiryMonth AS expiryMonth, stock_lots.expiryYear AS expiryYear, " +
+            "stock_lots.expiryEpochDay AS expiryEpochDay, stock_lots.count AS count, products.imageHash AS imageHash, products.thumbHash AS thumbHash " +
+            "FROM stock_lots JOIN products ON products.id = stock_lots.productId";
+
     @JsonProperty
     private long id;
 
@@ -32,10 +41,16 @@ public class FoodItem {
     private final int expiryMonth;
     @JsonIgnore
     private final int expiryYear;
+    // Derived from the three fields above; indexed on the lots for sorting and range queries
+    @JsonIgnore
+    private int expiryEpochDay;
     @JsonProperty
     private final int count;
     @JsonIgnore
-    private byte[] imageData;
+    private String imageHash;
+    // Small variant of the image for the list; null for images stored before thumbnails existed
+    @JsonIgnore
+    private String thumbHash;
 
     @Ignore
     public FoodItem(String barcode, int expiryDay, int expiryMonth, int expiryYear, int count) {
@@ -51,6 +66,32 @@ public class FoodItem {
         this.expiryMonth = expiryMonth;
         this.expiryYear = expiryYear;
         this.count = count;
+        this.expiryEpochDay = ExpiryDates.toEpochDay(expiryYear, expiryMonth, expiryDay);
+    }
+
+    /**
+     * Creates an item from its exported JSON form, where the expiry date is a single
+     * "dd.MM.yyyy" string.
+     */
+    @JsonCreator
+    static FoodItem fromJson(@JsonProperty("id") long id,
+                             @JsonProperty("name") String name,
+                             @JsonProperty("brands") String brands,
+                             @JsonProperty("imageUrl") String imageUrl,
+                             @JsonProperty("barcode") String barcode,
+                             @JsonProperty("expires") String expires,
+                             @JsonProperty("count") int count) {
+        if (expires == null) {
+            throw new IllegalArgumentException("Missing expiry date");
+        }
+        String[] parts = expires.trim().split("\\.");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid expiry date: " + expires);
+        }
+        FoodItem item = new FoodItem(name, brands, imageUrl, barcode,
+                Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), count);
+        item.setId(id);
+        return item;
     }
 
     public long getId() {
@@ -85,6 +126,10 @@ public class FoodItem {
         return expiryYear;
     }
 
+    public int getExpiryEpochDay() {
+        return expiryEpochDay;
+    }
+
     @JsonProperty("expires")
     public String getExpiryFormatted() {
         return String.format(Locale.GERMANY, Constants.DATE_FORMAT, expiryDay, expiryMonth, expiryYear);
@@ -94,8 +139,24 @@ public class FoodItem {
         return count;
     }
 
-    public byte[] getImageData() {
-        return imageData;
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public String getThumbHash() {
+        return thumbHash;
+    }
+
+    /**
+     * Whether the item carries any product data of its own, e.g. from an import or a prefetch,
+     * as opposed to just a barcode.
+     */
+    boolean hasProductData() {
+        return !isEmpty(name) || !isEmpty(brands) || !isEmpty(imageUrl) || imageHash != null || thumbHash != null;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
     }
 
     public void setId(long id) {
@@ -114,8 +175,17 @@ public class FoodItem {
         this.imageUrl = imageUrl;
     }
 
-    public void setImageData(byte[] imageData) {
-        this.imageData = imageData;
+    public void setImageHash(String imageHash) {
+        this.imageHash = imageHash;
+    }
+
+    public void setThumbHash(String thumbHash) {
+        this.thumbHash = thumbHash;
+    }
+
+    // For Room only, the value is always derived from the expiry date
+    void setExpiryEpochDay(int expiryEpochDay) {
+        this.expiryEpochDay = expiryEpochDay;
     }
 
     @NonNull
@@ -129,7 +199,8 @@ public class FoodItem {
                 ", barcode='" + barcode + '\'' +
                 ", expires=" + getExpiryFormatted() +
                 ", count=" + count +
-                ", imageData(size)=" + (imageData == null ? "0" : imageData.length) + "(B)" +
+                ", imageHash='" + imageHash + '\'' +
+                ", thumbHash='" + thumbHash + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,29 +1,266 @@
 package com.github.JohannesLipp.TheStash;
 
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
-import androidx.room.Update;
+import androidx.room.Transaction;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Stash items are stored as a {@link Product} per barcode and a {@link StockLot} per expiry
+ * date. Reads go through the {@code food_items} view that joins both; writes of product data go
+ * to the one product row shared by all lots of a barcode.
+ */
 @Dao
 public interface FoodItemDao {
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    long insert(FoodItem item);
+    /**
+     * Adds the item to the stash as a lot of the product with its barcode, creating the product
+     * if needed. Product data carried by the item fills in fields the product does not have yet.
+     * If the product already has a lot with the same expiry date, the item's count is added to it
+     * instead of creating a near-duplicate. Otherwise a new lot is created, with the item's id
+     * unless that is 0.
+     * <p>
+     * SQLite only supports UPSERT from Android 11 on, so the merge is an atomic increment followed
+     * by an insert that is ignored if a concurrent add created the lot in between.
+     *
+     * @return The id of the new or merged lot.
+     */
+    @Transaction
+    default long insert(FoodItem item) {
+        long productId = getOrCreateProductId(item);
+        int expiryEpochDay = item.getExpiryEpochDay();
+        if (addToLot(productId, expiryEpochDay, item.getCount()) == 0) {
+            StockLot lot = new StockLot(productId, item.getExpiryDay(), item.getExpiryMonth(), item.getExpiryYear(), item.getCount());
+            lot.setId(item.getId());
+            long id = insertLot(lot);
+            if (id != -1) {
+                return id;
+            }
+            if (addToLot(productId, expiryEpochDay, item.getCount()) == 0) {
+                throw new IllegalStateException("Lot id " + item.getId() + " is taken by another product or expiry date");
+            }
+        }
+        return getLotId(productId, expiryEpochDay);
+    }
 
-    @Query("SELECT * FROM food_items ORDER BY expiryYear ASC, expiryMonth ASC")
-    List<FoodItem> getAllItemsSorted();
+    @Transaction
+    default List<Long> insertAll(List<FoodItem> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (FoodItem item : items) {
+            ids.add(insert(item));
+        }
+        return ids;
+    }
 
-    @Query("UPDATE food_items SET count = count - :reduceBy WHERE id = :id AND count >= :reduceBy")
-    void reduceQuantity(long id, int reduceBy);
+    /**
+     * Returns the id of the product for the item's barcode, creating it from the item if there is
+     * none. Items without a barcode always get a new product.
+     */
+    default long getOrCreateProductId(FoodItem item) {
+        String barcode = item.getBarcode() == null || item.getBarcode().isEmpty() ? null : item.getBarcode();
+        Long productId = barcode != null ? getProductIdByBarcode(barcode) : null;
+        if (productId == null) {
+            return insertProduct(new Product(barcode, item.getName(), item.getBrands(), item.getImageUrl(), item.getImageHash(), item.getThumbHash()));
+        }
+        if (item.hasProductData()) {
+            fillMissingProductData(productId, item.getName(), item.getBrands(), item.getImageUrl(), item.getImageHash(), item.getThumbHash());
+        }
+        return productId;
+    }
 
-    @Update
-    void update(FoodItem foodItem);
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    long insertProduct(Product product);
 
-    @Delete
-    void delete(FoodItem item);
-}
\ No newline at end of file
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertLot(StockLot lot);
+
+    @Query("UPDATE stock_lots SET count = count + :count WHERE productId = :productId AND expiryEpochDay = :expiryEpochDay")
+    int addToLot(long productId, int expiryEpochDay, int count);
+
+    @Query("SELECT id FROM stock_lots WHERE productId = :productId AND expiryEpochDay = :expiryEpochDay")
+    long getLotId(long productId, int expiryEpochDay);
+
+    @Query("SELECT id FROM products WHERE barcode = :barcode")
+    Long getProductIdByBarcode(String barcode);
+
+    @Query("UPDATE products SET name = COALESCE(NULLIF(name, ''), :name), brands = COALESCE(NULLIF(brands, ''), :brands), " +
+            "imageUrl = COALESCE(NULLIF(imageUrl, ''), :imageUrl), imageHash = COALESCE(imageHash, :imageHash), thumbHash = COALESCE(thumbHash, :thumbHash) " +
+            "WHERE id = :productId")
+    void fillMissingProductData(long productId, String name, String brands, String imageUrl, String imageHash, String thumbHash);
+
+    /**
+     * Removes all lots and products.
+     */
+    @Transaction
+    default void deleteAll() {
+        deleteAllLots();
+        deleteAllProducts();
+    }
+
+    @Query("DELETE FROM stock_lots")
+    void deleteAllLots();
+
+    @Query("DELETE FROM products")
+    void deleteAllProducts();
+
+    @Query("SELECT COUNT(*) FROM stock_lots")
+    int count();
+
+    /**
+     * Keyset pagination over full items in the same (expiry, id) order as
+     * {@link #getListRowsAfter(int, long, int)}, used to walk the table in chunks.
+     */
+    @Query("SELECT * FROM food_items " +
+            "WHERE expiryEpochDay >= :afterExpiryEpochDay AND (expiryEpochDay > :afterExpiryEpochDay OR id > :afterId) " +
+            "ORDER BY expiryEpochDay ASC, id ASC LIMIT :limit")
+    List<FoodItem> getItemsAfter(int afterExpiryEpochDay, long afterId, int limit);
+
+    /**
+     * Keyset pagination over the list rows: returns up to {@code limit} rows ordered by
+     * (expiry, id) that come after the given key. Use {@link Integer#MIN_VALUE} and
+     * {@link Long#MIN_VALUE} to load the first page. The leading range condition on
+     * {@code expiryEpochDay} lets SQLite seek in the (expiryEpochDay, id) index instead of
+     * scanning; row value comparisons are not available on all supported SQLite versions.
+     */
+    @Query("SELECT id, name, brands, barcode, expiryDay, expiryMonth, expiryYear, count, imageHash, thumbHash, expiryEpochDay FROM food_items " +
+            "WHERE expiryEpochDay >= :afterExpiryEpochDay AND (expiryEpochDay > :afterExpiryEpochDay OR id > :afterId) " +
+            "ORDER BY expiryEpochDay ASC, id ASC LIMIT :limit")
+    List<FoodListRow> getListRowsAfter(int afterExpiryEpochDay, long afterId, int limit);
+
+    /**
+     * Keyset pagination backwards: returns up to {@code limit} rows that come before the given
+     * key, nearest first, so in descending (expiry, id) order. Used to load the page above the
+     * rows the list currently holds.
+     */
+    @Query("SELECT id, name, brands, barcode, expiryDay, expiryMonth, expiryYear, count, imageHash, thumbHash, expiryEpochDay FROM food_items " +
+            "WHERE expiryEpochDay <= :beforeExpiryEpochDay AND (expiryEpochDay < :beforeExpiryEpochDay OR id < :beforeId) " +
+            "ORDER BY expiryEpochDay DESC, id DESC LIMIT :limit")
+    List<FoodListRow> getListRowsBefore(int beforeExpiryEpochDay, long beforeId, int limit);
+
+    /**
+     * Returns the rows expiring between the given epoch days, both inclusive, soonest first. For
+     * "expiring in the next N days" pass {@link ExpiryDates#today()} and today plus N.
+     */
+    @Query("SELECT id, name, brands, barcode, expiryDay, expiryMonth, expiryYear, count, imageHash, thumbHash, expiryEpochDay FROM food_items " +
+            "WHERE expiryEpochDay BETWEEN :fromEpochDay AND :toEpochDay " +
+            "ORDER BY expiryEpochDay ASC, id ASC")
+    List<FoodListRow> getListRowsExpiringBetween(int fromEpochDay, int toEpochDay);
+
+    /**
+     * Returns up to {@code limit} rows whose name, brands or barcode match the given FTS
+     * expression, in list order. Build the expression with {@link StashSearch#toMatchQuery(String)}.
+     */
+    @Query("SELECT stock_lots.id, products.name, products.brands, products.barcode, expiryDay, expiryMonth, expiryYear, count, imageHash, thumbHash, expiryEpochDay " +
+            "FROM products_fts JOIN products ON products.id = products_fts.rowid JOIN stock_lots ON stock_lots.productId = products.id " +
+            "WHERE products_fts MATCH :matchQuery " +
+            "ORDER BY expiryEpochDay ASC, stock_lots.id ASC LIMIT :limit")
+    List<FoodListRow> search(String matchQuery, int limit);
+
+    @Query("SELECT * FROM food_items WHERE id = :id")
+    FoodItem getById(long id);
+
+    /**
+     * Whether the product of the item with the given lot id has a name and, if it has an image
+     * URL, a stored image, so there is nothing left to download for it.
+     */
+    @Query("SELECT name IS NOT NULL AND name != '' AND (imageUrl IS NULL OR imageUrl = '' OR imageHash IS NOT NULL) FROM food_items WHERE id = :id")
+    boolean hasProductData(long id);
+
+    /**
+     * Like {@link #hasProductData(long)}, for the product with the given barcode. False if there
+     * is no such product.
+     */
+    @Query("SELECT EXISTS (SELECT 1 FROM products WHERE barcode = :barcode AND name IS NOT NULL AND name != '' " +
+            "AND (imageUrl IS NULL OR imageUrl = '' OR imageHash IS NOT NULL))")
+    boolean hasProductDataForBarcode(String barcode);
+
+    /**
+     * Returns the barcodes of all products currently in stock.
+     */
+    @Query("SELECT barcode FROM products WHERE barcode IS NOT NULL AND barcode != '' " +
+            "AND EXISTS (SELECT 1 FROM stock_lots WHERE stock_lots.productId = products.id)")
+    List<String> getDistinctBarcodes();
+
+    /**
+     * Writes only the product metadata of the item with the given lot id. The product row is
+     * shared, so all lots of the same barcode show the new data. Unlike a full entity update,
+     * this never overwrites {@code count} with a stale value.
+     */
+    @Query("UPDATE products SET name = :name, brands = :brands, imageUrl = :imageUrl WHERE id = (SELECT productId FROM stock_lots WHERE id = :id)")
+    int updateMetadata(long id, String name, String brands, String imageUrl);
+
+    /**
+     * Writes only the image references (detail and list thumbnail) of the product of the item
+     * with the given lot id, leaving all other columns untouched.
+     */
+    @Query("UPDATE products SET imageHash = :imageHash, thumbHash = :thumbHash WHERE id = (SELECT productId FROM stock_lots WHERE id = :id)")
+    int updateImage(long id, String imageHash, String thumbHash);
+
+    @Query("UPDATE products SET name = :name, brands = :brands, imageUrl = :imageUrl WHERE barcode = :barcode")
+    int updateMetadataByBarcode(String barcode, String name, String brands, String imageUrl);
+
+    @Query("UPDATE products SET imageHash = :imageHash, thumbHash = :thumbHash WHERE barcode = :barcode")
+    int updateImageByBarcode(String barcode, String imageHash, String thumbHash);
+
+    /**
+     * Takes the given quantity out of the lot with the given id, and removes the lot, and its
+     * product if it was the last lot, once nothing is left. The decrement and the removal happen
+     * in one transaction, so items added to the lot concurrently are never deleted with it.
+     *
+     * @return The count left in the lot, 0 if it was removed or did not exist anymore.
+     */
+    @Transaction
+    default int removeQuantity(long id, int quantity) {
+        Long productId = getProductIdOfLot(id);
+        if (productId == null) {
+            return 0;
+        }
+        subtractFromLot(id, quantity);
+        if (deleteEmptyLot(id) > 0) {
+            deleteProductIfUnstocked(productId);
+            return 0;
+        }
+        return getLotCount(id);
+    }
+
+    @Query("UPDATE stock_lots SET count = count - :quantity WHERE id = :id")
+    void subtractFromLot(long id, int quantity);
+
+    @Query("DELETE FROM stock_lots WHERE id = :id AND count <= 0")
+    int deleteEmptyLot(long id);
+
+    @Query("SELECT count FROM stock_lots WHERE id = :id")
+    int getLotCount(long id);
+
+    /**
+     * Removes the item's lot, and its product once no lot of it is left, so the product's images
+     * are freed by {@link ImageStore#deleteUnreferenced(AppDatabase)}. Product data for a barcode
+     * that is added again comes from the product cache.
+     */
+    @Transaction
+    default void delete(FoodItem item) {
+        deleteLot(item.getId());
+    }
+
+    @Transaction
+    default void deleteLot(long id) {
+        Long productId = getProductIdOfLot(id);
+        deleteLotRow(id);
+        if (productId != null) {
+            deleteProductIfUnstocked(productId);
+        }
+    }
+
+    @Query("SELECT productId FROM stock_lots WHERE id = :id")
+    Long getProductIdOfLot(long id);
+
+    @Query("DELETE FROM stock_lots WHERE id = :id")
+    void deleteLotRow(long id);
+
+    @Query("DELETE FROM products WHERE id = :productId AND NOT EXISTS (SELECT 1 FROM stock_lots WHERE productId = :productId)")
+    void deleteProductIfUnstocked(long productId);
+}
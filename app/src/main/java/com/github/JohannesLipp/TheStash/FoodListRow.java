@@ -0,0 +1,137 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Ignore;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Immutable projection of a {@link FoodItem} carrying only what the main list displays. Loaded via
+ * {@link FoodItemDao#getListRowsAfter(int, long, int)}, so the list never reads image URLs or other columns it
+ * does not show. The full entity is loaded by id when an item is opened or edited.
+ */
+public class FoodListRow {
+    private final long id;
+    private final String name;
+    private final String brands;
+    private final String barcode;
+    private final int expiryDay;
+    private final int expiryMonth;
+    private final int expiryYear;
+    private final int count;
+    private final String imageHash;
+    private final String thumbHash;
+    private final int expiryEpochDay;
+
+    @Ignore
+    private final String expiryFormatted;
+
+    public FoodListRow(long id, String name, String brands, String barcode, int expiryDay, int expiryMonth, int expiryYear, int count, String imageHash, String thumbHash, int expiryEpochDay) {
+        this.id = id;
+        this.name = name;
+        this.brands = brands;
+        this.barcode = barcode;
+        this.expiryDay = expiryDay;
+        this.expiryMonth = expiryMonth;
+        this.expiryYear = expiryYear;
+        this.count = count;
+        this.imageHash = imageHash;
+        this.thumbHash = thumbHash;
+        this.expiryEpochDay = expiryEpochDay;
+        this.expiryFormatted = String.format(Locale.GERMANY, Constants.DATE_FORMAT, expiryDay, expiryMonth, expiryYear);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrands() {
+        return brands;
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public int getExpiryDay() {
+        return expiryDay;
+    }
+
+    public int getExpiryMonth() {
+        return expiryMonth;
+    }
+
+    public int getExpiryYear() {
+        return expiryYear;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public String getThumbHash() {
+        return thumbHash;
+    }
+
+    /**
+     * The image to show in the list: the thumbnail if there is one, otherwise the full image.
+     */
+    public String getListImageHash() {
+        return thumbHash != null ? thumbHash : imageHash;
+    }
+
+    /**
+     * Expiry date as days since 1970-01-01, the key the list is sorted by.
+     */
+    public int getExpiryEpochDay() {
+        return expiryEpochDay;
+    }
+
+    public String getExpiryFormatted() {
+        return expiryFormatted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FoodListRow that = (FoodListRow) o;
+        return id == that.id
+                && expiryDay == that.expiryDay
+                && expiryMonth == that.expiryMonth
+                && expiryYear == that.expiryYear
+                && expiryEpochDay == that.expiryEpochDay
+                && count == that.count
+                && Objects.equals(name, that.name)
+                && Objects.equals(brands, that.brands)
+                && Objects.equals(barcode, that.barcode)
+                && Objects.equals(imageHash, that.imageHash)
+                && Objects.equals(thumbHash, that.thumbHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, brands, barcode, expiryDay, expiryMonth, expiryYear, count, imageHash, thumbHash, expiryEpochDay);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FoodListRow{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", barcode='" + barcode + '\'' +
+                ", expires=" + expiryFormatted +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.camera.core.ImageProxy;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Crops the centered region of interest out of camera frames for barcode detection. Only the
+ * luminance plane is copied, which is all the detector needs; the chroma half of the NV21 buffer
+ * is filled with neutral grey once. The buffer is reused across frames, so the next frame may only
+ * be cropped once detection on the previous one has finished.
+ */
+public class FrameRegion {
+
+    private final float widthFraction;
+    private final float heightFraction;
+    private byte[] buffer;
+
+    public FrameRegion(ScannerConfig config) {
+        this.widthFraction = config.getRegionWidthFraction();
+        this.heightFraction = config.getRegionHeightFraction();
+    }
+
+    /**
+     * Copies the region of interest of the given YUV_420_888 frame into an NV21 image. The
+     * fractions refer to the upright view, so they are swapped for frames the camera delivers
+     * rotated by 90 or 270 degrees.
+     */
+    public InputImage crop(ImageProxy frame) {
+        int rotation = frame.getImageInfo().getRotationDegrees();
+        boolean sideways = rotation == 90 || rotation == 270;
+        int cropWidth = even(frame.getWidth() * (sideways ? heightFraction : widthFraction));
+        int cropHeight = even(frame.getHeight() * (sideways ? widthFraction : heightFraction));
+        int left = even((frame.getWidth() - cropWidth) / 2f);
+        int top = even((frame.getHeight() - cropHeight) / 2f);
+
+        int lumaSize = cropWidth * cropHeight;
+        int size = lumaSize + lumaSize / 2;
+        if (buffer == null || buffer.length != size) {
+            buffer = new byte[size];
+            Arrays.fill(buffer, lumaSize, size, (byte) 128);
+        }
+
+        ImageProxy.PlaneProxy luma = frame.getPlanes()[0];
+        ByteBuffer source = luma.getBuffer();
+        int rowStride = luma.getRowStride();
+        for (int row = 0; row < cropHeight; row++) {
+            source.position((top + row) * rowStride + left);
+            source.get(buffer, row * cropWidth, cropWidth);
+        }
+
+        return InputImage.fromByteArray(buffer, cropWidth, cropHeight, rotation, InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    private static int even(float value) {
+        return ((int) value) & ~1;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spaces out requests to the same host by a minimum interval. Requests to different hosts do not
+ * wait for each other.
+ */
+public class HostRateLimiter {
+
+    private final long minIntervalNanos;
+    private final Map<String, Long> nextSlotByHost = new HashMap<>();
+
+    public HostRateLimiter(long minIntervalMillis) {
+        this.minIntervalNanos = minIntervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Blocks until a request to the host of the given URL may be sent.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire(String url) throws InterruptedException {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return; // The request itself will fail, no need to hold it back
+        }
+
+        long waitNanos;
+        synchronized (nextSlotByHost) {
+            long now = System.nanoTime();
+            Long nextSlot = nextSlotByHost.get(host);
+            long slot = (nextSlot == null || nextSlot < now) ? now : nextSlot;
+            nextSlotByHost.put(host, slot + minIntervalNanos);
+            waitNanos = slot - now;
+        }
+
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+        }
+    }
+}
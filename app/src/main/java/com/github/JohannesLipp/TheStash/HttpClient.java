@@ -0,0 +1,20 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.io.IOException;
+
+/**
+ * Minimal HTTP client used for Open Food Facts requests, so the transport can be configured and
+ * replaced, e.g. in tests.
+ */
+public interface HttpClient {
+
+    /**
+     * Performs a GET request. The caller must close the returned response, which allows the
+     * underlying connection to be reused.
+     *
+     * @throws IOException If the request could not be performed.
+     */
+    HttpResponse get(String url) throws IOException;
+
+    HttpStats getStats();
+}
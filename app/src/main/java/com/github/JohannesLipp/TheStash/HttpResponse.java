@@ -0,0 +1,46 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class HttpResponse implements Closeable {
+    private final int code;
+    private final InputStream body;
+    private final boolean revalidated;
+
+    public HttpResponse(int code, InputStream body, boolean revalidated) {
+        this.code = code;
+        this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+        this.revalidated = revalidated;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * The decompressed response body, or the error body for unsuccessful responses.
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Whether the server confirmed a previously received body as unchanged, which is then served
+     * from memory.
+     */
+    public boolean isRevalidated() {
+        return revalidated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the requests made by an {@link HttpClient}. Bytes are counted as transferred, i.e.
+ * before decompression.
+ */
+public class HttpStats {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    void recordRequest(long latencyNanos, boolean wasNotModified) {
+        requests.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        if (wasNotModified) {
+            notModified.incrementAndGet();
+        }
+    }
+
+    void recordBytes(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Average time until the response headers arrived.
+     */
+    public double getAverageLatencyMillis() {
+        long count = requests.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / 1e6 / count;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "HttpStats{requests=%d, notModified=%d, bytesReceived=%d, avgLatency=%.1fms}",
+                getRequestCount(), getNotModifiedCount(), getBytesReceived(), getAverageLatencyMillis());
+    }
+}
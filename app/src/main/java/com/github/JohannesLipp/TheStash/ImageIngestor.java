@@ -0,0 +1,137 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a downloaded product image into the variants the app stores: a small thumbnail for the
+ * list and a larger detail image, both WebP. The original is never decoded at full size: its bounds
+ * are read first and it is decoded with a sample size close to the detail size.
+ */
+public class ImageIngestor {
+
+    private static final String TAG = "ImageIngestor";
+
+    public static final int THUMBNAIL_MAX_SIZE = 256;
+    public static final int DETAIL_MAX_SIZE = 800;
+    private static final int THUMBNAIL_QUALITY = 75;
+    private static final int DETAIL_QUALITY = 80;
+
+    private static final AtomicLong ingested = new AtomicLong();
+    private static final AtomicLong originalBytes = new AtomicLong();
+    private static final AtomicLong storedBytes = new AtomicLong();
+
+    public static class Images {
+        public final byte[] thumbnail;
+        public final byte[] detail;
+
+        Images(byte[] thumbnail, byte[] detail) {
+            this.thumbnail = thumbnail;
+            this.detail = detail;
+        }
+    }
+
+    /**
+     * Decodes the given encoded image and produces its thumbnail and detail variants. Must be called
+     * from a background thread.
+     *
+     * @return The encoded variants, or null if the image cannot be decoded.
+     */
+    @Nullable
+    public static Images ingest(byte[] original) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(original, 0, original.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, DETAIL_MAX_SIZE);
+        options.inJustDecodeBounds = false;
+        Bitmap decoded = BitmapFactory.decodeByteArray(original, 0, original.length, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        Bitmap detail = scaleDown(decoded, DETAIL_MAX_SIZE);
+        Bitmap thumbnail = scaleDown(detail, THUMBNAIL_MAX_SIZE);
+        Images images = new Images(encode(thumbnail, THUMBNAIL_QUALITY), encode(detail, DETAIL_QUALITY));
+        if (thumbnail != detail) {
+            thumbnail.recycle();
+        }
+        if (detail != decoded) {
+            detail.recycle();
+        }
+        decoded.recycle();
+
+        ingested.incrementAndGet();
+        originalBytes.addAndGet(original.length);
+        storedBytes.addAndGet(images.thumbnail.length + images.detail.length);
+        Log.d(TAG, "Ingested " + options.outWidth + "x" + options.outHeight + " image (" + original.length + " B, sample size "
+                + options.inSampleSize + ") into thumbnail " + images.thumbnail.length + " B and detail " + images.detail.length + " B");
+        return images;
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps the longer side at or above
+     * {@code maxSize}, so the decoded bitmap only needs a final, small scaling step.
+     */
+    static int calculateInSampleSize(int width, int height, int maxSize) {
+        int longerSide = Math.max(width, height);
+        int inSampleSize = 1;
+        while (longerSide / (inSampleSize * 2) >= maxSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static Bitmap scaleDown(Bitmap bitmap, int maxSize) {
+        int longerSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longerSide <= maxSize) {
+            return bitmap;
+        }
+        float scale = (float) maxSize / longerSide;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static byte[] encode(Bitmap bitmap, int quality) {
+        // WEBP means lossy for quality < 100 before API 30, which split it into explicit formats
+        Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(format, quality, stream);
+        return stream.toByteArray();
+    }
+
+    public static long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    public static long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    @NonNull
+    public static String getStats() {
+        long original = originalBytes.get();
+        long stored = storedBytes.get();
+        long savedPercent = original > 0 ? 100 - stored * 100 / original : 0;
+        return "ImageIngestor{images=" + ingested.get() + ", originalBytes=" + original + ", storedBytes=" + stored + ", saved=" + savedPercent + "%}";
+    }
+
+    public static void logStats() {
+        Log.d(TAG, getStats());
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content-addressed store for product images. Identical images are stored once, keyed by the
+ * SHA-256 hash of their encoded bytes, and are loaded separately from the item rows.
+ */
+public class ImageStore {
+
+    private static final String TAG = "ImageStore";
+
+    /**
+     * Stores the given encoded image and returns its hash. Must be called from a background thread.
+     */
+    public static String store(AppDatabase database, byte[] imageData) {
+        String hash = hash(imageData);
+        database.productImageDao().insert(new ProductImage(hash, imageData));
+        Log.d(TAG, "Stored image " + hash + " (" + imageData.length + " B)");
+        return hash;
+    }
+
+    /**
+     * Loads the encoded image for the given hash. Must be called from a background thread.
+     */
+    @Nullable
+    public static byte[] load(AppDatabase database, String hash) {
+        return database.productImageDao().getData(hash);
+    }
+
+    /**
+     * Removes images no longer referenced by any item. Must be called from a background thread.
+     */
+    public static void deleteUnreferenced(AppDatabase database) {
+        int deleted = database.productImageDao().deleteUnreferenced();
+        if (deleted > 0) {
+            Log.d(TAG, "Deleted " + deleted + " unreferenced image(s)");
+        }
+    }
+
+    public static String hash(byte[] imageData) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(imageData);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is guaranteed to be available on every Android version
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,133 +1,200 @@
 package com.github.JohannesLipp.TheStash;
 
-import android.app.Activity;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.List;
-import java.util.concurrent.Executors;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class ItemDataUpdater {
 
     private static final String TAG = "ItemDataUpdater";
 
-    public static boolean downloadFoodDataAndImage(FoodItem foodItem, AppDatabase database, Activity callbackActivity, FoodAdapter adapter) {
+    // Concurrent downloads of the same image URL share one request
+    private static final SingleFlight<String, ImageIngestor.Images> imageDownloads = new SingleFlight<>();
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Looks up product data and the product image for the given item and stores both with a
+     * single write, so the observed list reloads once per item instead of once per field.
+     * Failures are shown as toasts through the application context, so the lookup never keeps
+     * the calling activity alive.
+     */
+    public static boolean downloadFoodDataAndImage(FoodItem foodItem, AppDatabase database, Context context) {
         Log.d(TAG, "Starting download for item ID: " + foodItem.getId() + ", Barcode: " + foodItem.getBarcode());
-        OpenFoodFacts.fetchProductData(
+        ProductCache.fetchProductData(
+                database,
                 foodItem,
-                Executors.newSingleThreadExecutor(),
-                new ProductDataCallbackHandler(foodItem, database, callbackActivity, adapter)
+                AppExecutors.network(),
+                new ProductDataCallbackHandler(foodItem, database, context.getApplicationContext())
         );
         return true;
     }
 
+    /**
+     * Like {@link #downloadFoodDataAndImage(FoodItem, AppDatabase, Context)}, but skips items
+     * whose product already has its data, e.g. because the item was merged into an existing lot
+     * or another lot of the same barcode was looked up before. Must be called from a background
+     * thread.
+     */
+    public static void downloadFoodDataAndImageIfMissing(FoodItem foodItem, AppDatabase database, Context context) {
+        if (database.foodItemDao().hasProductData(foodItem.getId())) {
+            Log.d(TAG, "Product data already stored for item ID: " + foodItem.getId() + ", Barcode: " + foodItem.getBarcode());
+            return;
+        }
+        downloadFoodDataAndImage(foodItem, database, context);
+    }
+
     private static class ProductDataCallbackHandler implements OpenFoodFacts.ProductDataCallback {
         private final FoodItem itemToUpdate;
         private final AppDatabase database;
-        private final Activity callbackActivity;
-        private final FoodAdapter adapter;
+        private final Context appContext;
 
-        public ProductDataCallbackHandler(FoodItem itemToUpdate, AppDatabase database, Activity callbackActivity, FoodAdapter adapter) {
+        public ProductDataCallbackHandler(FoodItem itemToUpdate, AppDatabase database, Context appContext) {
             this.itemToUpdate = itemToUpdate;
             this.database = database;
-            this.callbackActivity = callbackActivity;
-            this.adapter = adapter;
+            this.appContext = appContext;
         }
 
         @Override
         public void onSuccess(OpenFoodFactsResultDTO productData) {
-            Log.d(TAG, "Download successful, updating DB & UI for: " + productData.toString());
-
-            // Update database entry (product_name_de, or product_name as fallback; brands, image_url), and update the recyclerview if necessary
-            new Thread(() -> {
-                itemToUpdate.setName(productData.getProductName());
-                itemToUpdate.setBrands(productData.getBrands());
-                itemToUpdate.setImageUrl(productData.getImageUrl());
-
-                database.foodItemDao().update(itemToUpdate); // Save the updated item to the database
-                Log.d(TAG, "Updated item in DB: " + itemToUpdate);
-
-                // Update RecyclerView with latest database state
-                List<FoodItem> foodItems = database.foodItemDao().getAllItemsSorted();
-                Log.d(TAG, "Latest food items from the database: " + foodItems);
-                callbackActivity.runOnUiThread(() -> {
-                    adapter.setItems(foodItems);
-                    Log.d(TAG, "RecyclerView updated with latest data.");
-                });
-
-                // In parallel to the UI update, download and store item image if available
-                if (itemToUpdate.getImageUrl() != null && !itemToUpdate.getImageUrl().isEmpty()) {
-                    Log.d(TAG, "Downloading image for item: " + itemToUpdate);
-                    downloadAndStoreImage(itemToUpdate, database, callbackActivity, adapter);
-                } else {
-                    Log.d(TAG, "No image URL available for item: " + itemToUpdate.getName());
+            Log.d(TAG, "Download successful, fetching image for: " + productData.toString());
+
+            // Called on a background thread, so if a pool is saturated the data is stored from here
+            boolean queued = AppExecutors.network().tryExecute(() -> {
+                ImageIngestor.Images images = downloadImageIfAvailable(productData.getImageUrl());
+
+                Runnable store = () -> storeProductData(database, itemToUpdate.getId(), productData, images);
+                if (!AppExecutors.db().tryExecute(store)) {
+                    store.run();
                 }
-            }).start();
+            });
+            if (!queued) {
+                // Without the image, which refreshing the item fetches later
+                storeProductData(database, itemToUpdate.getId(), productData, null);
+            }
         }
 
         @Override
         public void onError(String errorMessage) {
             Log.e("MainActivity", "Download failed. Error: " + errorMessage);
-            callbackActivity.runOnUiThread(() -> Toast.makeText(callbackActivity, "Failed to get details: " + errorMessage.substring(0, Math.min(errorMessage.length(), 50)), Toast.LENGTH_LONG).show());
+            mainHandler.post(() -> Toast.makeText(appContext, "Failed to get details: " + errorMessage.substring(0, Math.min(errorMessage.length(), 50)), Toast.LENGTH_LONG).show());
         }
+
+        /**
+         * Downloads the image at the given URL, if any. Failures are reported to the user and
+         * yield null, so the product data is still stored. Must be called from a background thread.
+         */
+        private ImageIngestor.Images downloadImageIfAvailable(String imageUrl) {
+            if (imageUrl == null || imageUrl.isEmpty()) {
+                Log.d(TAG, "No image URL available for item: " + itemToUpdate.getBarcode());
+                return null;
+            }
+
+            try {
+                ImageIngestor.Images images = downloadImage(imageUrl);
+                if (images == null) {
+                    Log.e(TAG, "Failed to decode bitmap from URL: " + imageUrl);
+                }
+                return images;
+            } catch (IOException e) {
+                Log.e(TAG, "Error downloading image: " + e.getMessage(), e);
+                mainHandler.post(() -> Toast.makeText(appContext, "Failed to download image.", Toast.LENGTH_LONG).show());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Writes product data and, if present, image variants to the item with the given id in one
+     * transaction. Only these columns are written, so concurrent quantity changes are never
+     * overwritten. Must be called from a background thread.
+     */
+    static void storeProductData(AppDatabase database, long itemId, OpenFoodFactsResultDTO productData, ImageIngestor.Images images) {
+        database.runInTransaction(() -> {
+            FoodItemDao dao = database.foodItemDao();
+            dao.updateMetadata(itemId, productData.getProductName(), productData.getBrands(), productData.getImageUrl());
+            if (images != null) {
+                dao.updateImage(itemId, ImageStore.store(database, images.detail), ImageStore.store(database, images.thumbnail));
+            }
+        });
+        Log.d(TAG, "Updated item " + itemId + " in DB with " + productData);
     }
 
     /**
-     * Downloads an image from the given URL and stores it in the database. Must be called from
-     * a background thread.
+     * Downloads the image at the given URL and turns it into thumbnail and detail variants. Must be
+     * called from a background thread.
      *
-     * @param itemToUpdateWithImage
-     * @param database
-     * @param callbackActivity
-     * @param adapter
+     * @param imageUrl The URL of the image.
+     * @return The encoded variants, or null if the download could not be decoded.
+     * @throws IOException If the download fails.
      */
-    private static void downloadAndStoreImage(FoodItem itemToUpdateWithImage, AppDatabase database, Activity callbackActivity, FoodAdapter adapter) {
-        Log.d(TAG, "Downloading image for item: " + itemToUpdateWithImage);
+    public static ImageIngestor.Images downloadImage(String imageUrl) throws IOException {
+        return imageDownloads.run(imageUrl, () -> fetchImage(imageUrl));
+    }
 
-        try {
-            URL url = new URL(itemToUpdateWithImage.getImageUrl());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
+    private static ImageIngestor.Images fetchImage(String imageUrl) throws IOException {
+        byte[] original;
+        try (HttpResponse response = OpenFoodFacts.getHttpClient().get(imageUrl)) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Server error (HTTP " + response.getCode() + ") for " + imageUrl);
+            }
             Log.d(TAG, "Connection established, downloading image...");
-            InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
-            connection.disconnect();
-
-            if (bitmap != null) {
-                Log.d(TAG, "Image downloaded, converting to JPEG...");
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 80, stream);
-                byte[] imageByteArray = stream.toByteArray();
-                stream.close();
-                Log.d(TAG, "Image converted to JPEG, storing in DB...");
-
-                itemToUpdateWithImage.setImageData(imageByteArray);
-                database.foodItemDao().update(itemToUpdateWithImage);
-                Log.d(TAG, "Image stored in DB for: " + itemToUpdateWithImage);
-
-                // Update RecyclerView with latest database state
-                List<FoodItem> foodItems = database.foodItemDao().getAllItemsSorted();
-                Log.d(TAG, "Loaded latest food items from database: " + foodItems);
-
-                callbackActivity.runOnUiThread(() -> {
-                    adapter.setItems(foodItems);
-                    Log.d(TAG, "RecyclerView updated with latest data.");
-                });
-            } else {
-                Log.e(TAG, "Failed to decode bitmap from URL: " + itemToUpdateWithImage.getImageUrl());
+            // Kept as bytes so the bounds can be read before the actual, downsampled decode
+            original = readFully(response.getBody());
+        }
+
+        Log.d(TAG, "Image downloaded (" + original.length + " B), creating thumbnail and detail variants...");
+        return ingestOnDecodePool(original);
+    }
+
+    /**
+     * Decodes and encodes the image variants on the decode pool, so at most as many images are
+     * processed at once as there are decode threads, however many downloads finish together. The
+     * calling thread waits for the result and does the work itself if the task is dropped.
+     */
+    private static ImageIngestor.Images ingestOnDecodePool(byte[] original) throws IOException {
+        FutureTask<ImageIngestor.Images> ingest = new FutureTask<>(() -> ImageIngestor.ingest(original));
+        if (!AppExecutors.decode().tryExecute(ingest)) {
+            return ImageIngestor.ingest(original);
+        }
+        try {
+            return ingest.get();
+        } catch (CancellationException e) {
+            // Pushed out of the queue by newer thumbnail loads
+            return ImageIngestor.ingest(original);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error downloading image: " + e.getMessage(), e);
-            callbackActivity.runOnUiThread(() -> Toast.makeText(callbackActivity, "Failed to download image.", Toast.LENGTH_LONG).show());
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to process image", cause);
+        } catch (InterruptedException e) {
+            ingest.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing image");
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
         }
+        return out.toByteArray();
     }
 }
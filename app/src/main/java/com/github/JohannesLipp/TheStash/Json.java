@@ -0,0 +1,13 @@
+package com.github.JohannesLipp.TheStash;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Shared, preconfigured Jackson mapper. Creating an {@link ObjectMapper} is expensive and it is
+ * thread-safe once configured, so all JSON handling in the app uses this one.
+ */
+public class Json {
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+}
@@ -1,52 +1,57 @@
 package com.github.JohannesLipp.TheStash;
 
-import android.content.ContentValues;
-import android.content.Context;
+import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.room.Room;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
     private FoodAdapter adapter;
+    private StashPager pager;
+    private ThumbnailLoader thumbnailLoader;
+    private TaskScope tasks;
+    private ProgressBar progressRefresh;
+    private ProgressBar progressTransfer;
+    private TransferViewModel transfers;
     private AppDatabase database;
+    private boolean warmUpScheduled = false;
 
 
     private ActivityResultLauncher<Intent> barcodeLauncher;
+    private ActivityResultLauncher<String[]> importLauncher;
+    private ActivityResultLauncher<String[]> catalogLauncher;
+    private ActivityResultLauncher<Intent> continuousScanLauncher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,45 +60,151 @@ public class MainActivity extends AppCompatActivity {
 
         RecyclerView recyclerView = findViewById(R.id.recyclerView);
         FloatingActionButton fabAdd = findViewById(R.id.fabAdd);
+        progressRefresh = findViewById(R.id.progressRefresh);
+        progressTransfer = findViewById(R.id.progressTransfer);
 
         openDatabase();
+        tasks = new TaskScope(this);
+        if (savedInstanceState == null) {
+            // Once per launch, not on every configuration change; skipped if the pool is busy
+            AppExecutors.db().tryExecute(() -> ProductCache.pruneExpired(database));
+        }
 
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        thumbnailLoader = new ThumbnailLoader(database, tasks);
         adapter = new FoodAdapter(
+                thumbnailLoader,
                 this::showDeleteItemDialog,
-                foodItem -> ItemDataUpdater.downloadFoodDataAndImage(
-                        foodItem,
-                        database,
-                        MainActivity.this,
-                        adapter
-                )
+                this::refreshItemData
         );
         recyclerView.setAdapter(adapter);
+        pager = new StashPager(database, this, adapter, tasks);
 
-        reloadAllItems();
+        transfers = new ViewModelProvider(this).get(TransferViewModel.class);
+        if (transfers.databaseImporter != null) {
+            // Still running from before the activity was recreated
+            transfers.databaseImporter.setListener(createImportListener());
+            showImportProgress();
+        }
+        if (transfers.catalogImporter != null) {
+            transfers.catalogImporter.setListener(createCatalogImportListener());
+            showImportProgress();
+        }
+        if (transfers.databaseExporter != null) {
+            transfers.databaseExporter.setListener(createExportListener());
+        }
+        if (transfers.bulkRefresher != null) {
+            transfers.bulkRefresher.setListener(createRefreshListener(transfers.bulkRefreshReported));
+        }
 
         barcodeLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                         String scannedBarcode = result.getData().getStringExtra("barcode");
-                        showAddItemDialog(scannedBarcode);
+                        // Look the product up while the user enters expiry date and quantity
+                        showAddItemDialog(scannedBarcode, ProductPrefetch.start(database, scannedBarcode));
                     } else {
-                        showAddItemDialog(null);
+                        showAddItemDialog(null, null);
+                    }
+                }
+        );
+
+        continuousScanLauncher = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                        int scanned = result.getData().getIntExtra(BarcodeScannerActivity.EXTRA_SCANNED_COUNT, 0);
+                        Toast.makeText(this, "Added " + scanned + " items, fetching their details...", Toast.LENGTH_LONG).show();
+                    }
+                }
+        );
+
+        importLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> {
+                    if (uri != null) {
+                        showImportModeDialog(uri);
+                    }
+                }
+        );
+
+        catalogLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> {
+                    if (uri != null) {
+                        showCatalogCountryDialog(uri);
                     }
                 }
         );
 
         fabAdd.setOnClickListener(v -> {
+            ScannerWarmup.markLaunch();
             Intent intent = new Intent(MainActivity.this, BarcodeScannerActivity.class);
             barcodeLauncher.launch(intent);
         });
+        fabAdd.setOnLongClickListener(v -> {
+            startContinuousScan();
+            return true;
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Prepare camera and scanner once the list is drawn, so the next scan starts faster
+        if (!warmUpScheduled && !ScannerWarmup.isWarm()) {
+            warmUpScheduled = true;
+            Looper.myQueue().addIdleHandler(() -> {
+                warmUpScheduled = false;
+                ScannerWarmup.warmUp(this);
+                return false;
+            });
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ScannerWarmup.logStats();
+        AppExecutors.logStats();
+        ProductCache.logStats();
+        ImageIngestor.logStats();
+        Log.d(TAG, "Open Food Facts " + OpenFoodFacts.getHttpClient().getStats());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (thumbnailLoader != null) {
+            thumbnailLoader.trimMemory(level);
+        }
+        ScannerWarmup.trimMemory(level);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.menu_main, menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        if (searchView != null) {
+            searchView.setQueryHint("Name, brand or barcode");
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    pager.setSearchQuery(query);
+                    searchView.clearFocus();
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    pager.setSearchQuery(newText);
+                    return true;
+                }
+            });
+        }
         return true;
     }
 
@@ -101,13 +212,28 @@ public class MainActivity extends AppCompatActivity {
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         int itemId = item.getItemId();
         if (itemId == R.id.action_refresh_data_and_pictures) {
-            // Handle refresh pictures action
-            Toast.makeText(this, "Refresh Data and Pictures clicked", Toast.LENGTH_SHORT).show();
-            // TODO: Implement refresh data and pictures logic
+            refreshAllItems();
+            return true;
+        } else if (itemId == R.id.action_continuous_scan) {
+            startContinuousScan();
             return true;
         } else if (itemId == R.id.action_export_database) {
             exportDatabaseAsJson();
             return true;
+        } else if (itemId == R.id.action_import_database) {
+            if (transfers.databaseImporter != null) {
+                Toast.makeText(this, "Import already running", Toast.LENGTH_SHORT).show();
+            } else {
+                importLauncher.launch(new String[]{"application/json", "application/octet-stream"});
+            }
+            return true;
+        } else if (itemId == R.id.action_import_catalog) {
+            if (transfers.catalogImporter != null) {
+                Toast.makeText(this, "Catalog import already running", Toast.LENGTH_SHORT).show();
+            } else {
+                catalogLauncher.launch(new String[]{"text/*", "application/json", "application/octet-stream"});
+            }
+            return true;
         } else if (itemId == R.id.action_settings) {
             Toast.makeText(this, "Settings clicked", Toast.LENGTH_SHORT).show();
             // TODO: Implement settings logic
@@ -116,140 +242,320 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    private void refreshAllItems() {
+        if (transfers.bulkRefresher != null) {
+            Toast.makeText(this, "Refresh already running", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        Toast.makeText(this, "Refreshing data and pictures...", Toast.LENGTH_SHORT).show();
+        transfers.bulkRefresher = new BulkRefresher(database, Constants.REFRESH_PARALLELISM, Constants.REFRESH_MIN_REQUEST_INTERVAL_MS);
+        transfers.bulkRefreshReported = true;
+        transfers.bulkRefresher.start(createRefreshListener(true));
+    }
+
+    /**
+     * @param reportResult Whether to tell the user how the refresh went; refreshes the user did
+     *                     not ask for only show their progress.
+     */
+    private BulkRefresher.ProgressListener createRefreshListener(boolean reportResult) {
+        return new BulkRefresher.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                progressRefresh.setMax(total);
+                progressRefresh.setProgress(done);
+                progressRefresh.setVisibility(View.VISIBLE);
+            }
+
+            @Override
+            public void onFinished(int updated, int failed, long elapsedMillis) {
+                transfers.bulkRefresher = null;
+                progressRefresh.setVisibility(View.GONE);
+                if (reportResult) {
+                    Toast.makeText(MainActivity.this, "Refreshed " + updated + " products (" + failed + " failed) in " + (elapsedMillis / 1000) + " s", Toast.LENGTH_LONG).show();
+                }
+            }
+        };
+    }
+
+    /**
+     * Asks for the expiry date shared by all items of the session, then scans items one after
+     * another without leaving the camera.
+     */
+    private void startContinuousScan() {
+        final Calendar calendar = Calendar.getInstance();
+        DatePickerDialog datePickerDialog = new DatePickerDialog(this,
+                (view, year, month, day) -> {
+                    ScannerWarmup.markLaunch();
+                    Intent intent = new Intent(MainActivity.this, BarcodeScannerActivity.class);
+                    intent.putExtra(BarcodeScannerActivity.EXTRA_CONTINUOUS, true);
+                    intent.putExtra(BarcodeScannerActivity.EXTRA_EXPIRY_DAY, day);
+                    intent.putExtra(BarcodeScannerActivity.EXTRA_EXPIRY_MONTH, month + 1);
+                    intent.putExtra(BarcodeScannerActivity.EXTRA_EXPIRY_YEAR, year);
+                    continuousScanLauncher.launch(intent);
+                },
+                calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH));
+        datePickerDialog.setTitle("Expiry date of the scanned items");
+        datePickerDialog.show();
+    }
+
     private void exportDatabaseAsJson() {
+        if (transfers.databaseExporter != null) {
+            transfers.databaseExporter.cancel();
+            Toast.makeText(this, "Cancelling export...", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         Toast.makeText(this, "Exporting database as JSON...", Toast.LENGTH_SHORT).show();
 
-        new Thread(() -> {
-            List<FoodItem> foodItems = database.foodItemDao().getAllItemsSorted();
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        String currentDate = dateFormat.format(new Date());
+        String exportJsonFileName = currentDate + " The Stash Database Export.json";
 
-            try {
-                String jsonString = objectMapper.writeValueAsString(foodItems);
-                Log.d(TAG, "Serialized JSON for export: " + jsonString.substring(0, Math.min(jsonString.length(), 500)) + "...");
+        transfers.databaseExporter = new DatabaseExporter(database, this);
+        transfers.databaseExporter.start(exportJsonFileName, createExportListener());
+    }
 
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-                String currentDate = dateFormat.format(new Date());
-                String exportJsonFileName = currentDate + " The Stash Database Export.json";
+    private DatabaseExporter.ProgressListener createExportListener() {
+        return new DatabaseExporter.ProgressListener() {
+            @Override
+            public void onProgress(int done, int total) {
+                progressTransfer.setMax(total);
+                progressTransfer.setProgress(done);
+                progressTransfer.setVisibility(View.VISIBLE);
+            }
 
-                writeJsonToDownloads(MainActivity.this, jsonString, exportJsonFileName);
+            @Override
+            public void onFinished(int exported, long elapsedMillis) {
+                exportEnded();
+                Toast.makeText(MainActivity.this, "Exported " + exported + " items as JSON to Downloads", Toast.LENGTH_LONG).show();
+            }
 
-                Log.i(TAG, "Database exported successfully as JSON to Downloads directory: " + exportJsonFileName);
-                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Database exported as JSON to Downloads", Toast.LENGTH_LONG).show());
+            @Override
+            public void onCancelled() {
+                exportEnded();
+                Toast.makeText(MainActivity.this, "Export cancelled", Toast.LENGTH_SHORT).show();
+            }
 
-            } catch (IOException e) { // Catches JsonProcessingException too
-                Log.e(TAG, "Error exporting database as JSON", e);
-                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Error exporting JSON: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            @Override
+            public void onError(String errorMessage) {
+                exportEnded();
+                Toast.makeText(MainActivity.this, "Error exporting JSON: " + errorMessage, Toast.LENGTH_LONG).show();
             }
-        }).start();
+        };
+    }
+
+    private void exportEnded() {
+        transfers.databaseExporter = null;
+        progressTransfer.setVisibility(View.GONE);
+    }
+
+    private void showImportModeDialog(Uri uri) {
+        new AlertDialog.Builder(this)
+                .setTitle("Import Database")
+                .setMessage("Add the imported items to the stash, or replace the whole stash with them?")
+                .setPositiveButton("Add", (dialog, which) -> importDatabaseFromJson(uri, DatabaseImporter.Mode.MERGE))
+                .setNegativeButton("Replace", (dialog, which) -> importDatabaseFromJson(uri, DatabaseImporter.Mode.REPLACE))
+                .setNeutralButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void importDatabaseFromJson(Uri uri, DatabaseImporter.Mode mode) {
+        Toast.makeText(this, "Importing database...", Toast.LENGTH_SHORT).show();
+
+        transfers.databaseImporter = new DatabaseImporter(database, this);
+        transfers.databaseImporter.start(uri, mode, createImportListener());
+    }
+
+    private DatabaseImporter.ProgressListener createImportListener() {
+        return new DatabaseImporter.ProgressListener() {
+            @Override
+            public void onProgress(int imported) {
+                showImportProgress();
+            }
+
+            @Override
+            public void onFinished(int imported, long elapsedMillis, List<String> barcodesToEnrich) {
+                importEnded();
+                Toast.makeText(MainActivity.this, "Imported " + imported + " items in " + (elapsedMillis / 1000) + " s", Toast.LENGTH_LONG).show();
+                enrichImportedItems(barcodesToEnrich);
+            }
+
+            @Override
+            public void onCancelled(int imported) {
+                importEnded();
+                Toast.makeText(MainActivity.this, "Import cancelled, " + imported + " items added", Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                importEnded();
+                Toast.makeText(MainActivity.this, "Error importing JSON: " + errorMessage, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
+
+    private void showImportProgress() {
+        progressTransfer.setIndeterminate(true);
+        progressTransfer.setVisibility(View.VISIBLE);
+    }
+
+    private void importEnded() {
+        transfers.databaseImporter = null;
+        progressTransfer.setIndeterminate(false);
+        progressTransfer.setVisibility(View.GONE);
     }
 
     /**
-     * Writes a JSON string to a file in the public "Downloads" directory using MediaStore.
-     *
-     * @param context     The context.
-     * @param jsonString  The JSON string to write.
-     * @param displayName The desired display name for the file in Downloads.
-     * @throws IOException If an error occurs during writing.
+     * Asks which country's products to import from an Open Food Facts export, defaulting to the
+     * device's country. An empty tag imports all products.
      */
-    private void writeJsonToDownloads(Context context, String jsonString, String displayName) throws IOException {
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
-        values.put(MediaStore.MediaColumns.MIME_TYPE, "application/json");
-
-        Uri collectionUri;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_DOWNLOADS);
-            collectionUri = MediaStore.Downloads.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
-        } else {
-            // For older versions (pre-Q), direct file access.
-            // This requires WRITE_EXTERNAL_STORAGE permission.
-            File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-            if (!downloadsDir.exists()) {
-                if (!downloadsDir.mkdirs()) {
-                    throw new IOException("Failed to create Downloads directory (pre-Q).");
-                }
+    private void showCatalogCountryDialog(Uri uri) {
+        EditText input = new EditText(this);
+        input.setSingleLine();
+        input.setText("en:" + Locale.getDefault().getDisplayCountry(Locale.ENGLISH).toLowerCase(Locale.ROOT).replace(' ', '-'));
+
+        new AlertDialog.Builder(this)
+                .setTitle("Import Product Catalog")
+                .setMessage("Only import products sold in this country (Open Food Facts tag, leave empty for all):")
+                .setView(input)
+                .setPositiveButton("Import", (dialog, which) -> {
+                    String countryTag = input.getText().toString().trim();
+                    importCatalog(uri, countryTag.isEmpty() ? null : countryTag);
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void importCatalog(Uri uri, @Nullable String countryTag) {
+        Toast.makeText(this, "Importing product catalog...", Toast.LENGTH_SHORT).show();
+
+        transfers.catalogImporter = new CatalogImporter(database, this);
+        transfers.catalogImporter.start(uri, countryTag, createCatalogImportListener());
+    }
+
+    private CatalogImporter.ProgressListener createCatalogImportListener() {
+        return new CatalogImporter.ProgressListener() {
+            @Override
+            public void onProgress(long imported) {
+                showImportProgress();
             }
-            File destFile = new File(downloadsDir, displayName);
-            try (FileOutputStream fos = new FileOutputStream(destFile);
-                 OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
-                writer.write(jsonString);
+
+            @Override
+            public void onFinished(long imported, long elapsedMillis) {
+                catalogImportEnded();
+                Toast.makeText(MainActivity.this, "Imported " + imported + " products in " + (elapsedMillis / 1000) + " s", Toast.LENGTH_LONG).show();
             }
-            Log.d(TAG, "JSON file written to: " + destFile.getAbsolutePath() + " (pre-Q method)");
-            return; // Exit if pre-Q handled
-        }
 
-        Uri itemUri = context.getContentResolver().insert(collectionUri, values);
-        if (itemUri == null) {
-            throw new IOException("Failed to create new MediaStore record for " + displayName);
-        }
+            @Override
+            public void onCancelled(long imported) {
+                catalogImportEnded();
+                Toast.makeText(MainActivity.this, "Catalog import cancelled, " + imported + " products kept", Toast.LENGTH_LONG).show();
+            }
 
-        try (OutputStream out = context.getContentResolver().openOutputStream(itemUri);
-             OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
-            if (out == null) {
-                throw new IOException("Failed to open output stream for " + itemUri);
-            }
-            writer.write(jsonString);
-            Log.d(TAG, "JSON file written to MediaStore URI: " + itemUri);
-        } catch (Exception e) {
-            // If something goes wrong, try to delete the incomplete MediaStore entry
-            Log.e(TAG, "Error writing JSON to MediaStore", e);
-            context.getContentResolver().delete(itemUri, null, null);
-        }
+            @Override
+            public void onError(String errorMessage) {
+                catalogImportEnded();
+                Toast.makeText(MainActivity.this, "Error importing catalog: " + errorMessage, Toast.LENGTH_LONG).show();
+            }
+        };
+    }
+
+    private void catalogImportEnded() {
+        transfers.catalogImporter = null;
+        progressTransfer.setIndeterminate(false);
+        progressTransfer.setVisibility(View.GONE);
     }
 
-    public void reloadAllItems() {
-        new Thread(() -> {
-            final List<FoodItem> items = database.foodItemDao().getAllItemsSorted();
-            Log.d(TAG, "Loaded items: " + items);
-            runOnUiThread(() -> adapter.setItems(items));
-        }).start();
+    /**
+     * Fetches pictures and missing data for imported items in one batched, rate-limited run.
+     */
+    private void enrichImportedItems(List<String> barcodes) {
+        if (barcodes.isEmpty() || transfers.bulkRefresher != null) {
+            return;
+        }
+        transfers.bulkRefresher = new BulkRefresher(database, Constants.REFRESH_PARALLELISM, Constants.REFRESH_MIN_REQUEST_INTERVAL_MS);
+        transfers.bulkRefreshReported = false;
+        transfers.bulkRefresher.start(createRefreshListener(false), barcodes);
     }
 
-    private void showAddItemDialog(@Nullable String scannedBarcode) {
+    private void showAddItemDialog(@Nullable String scannedBarcode, @Nullable ProductPrefetch prefetch) {
+        boolean[] saved = {false};
         AddItemDialog dialog = new AddItemDialog(
                 this,
                 scannedBarcode,
-                (barcode, day, month, year, quantity) ->
-                        new Thread(() -> { // Perform DB operation on background thread
-                            FoodItem newItem = new FoodItem(barcode, day, month, year, quantity);
+                (barcode, day, month, year, quantity) -> {
+                    saved[0] = true;
+                    // The prefetched data only applies if the barcode was not edited in the dialog
+                    ProductPrefetch matchingPrefetch = prefetch != null && prefetch.getBarcode().equals(barcode) ? prefetch : null;
+                    if (prefetch != null && matchingPrefetch == null) {
+                        prefetch.discard();
+                    }
+                    boolean queued = AppExecutors.db().tryExecute(() -> { // Perform DB operation on background thread
+                        FoodItem newItem = new FoodItem(barcode, day, month, year, quantity);
+                        if (matchingPrefetch != null) {
+                            matchingPrefetch.saveWith(newItem, database, MainActivity.this);
+                        } else {
                             long newId = database.foodItemDao().insert(newItem);
                             newItem.setId(newId);
+                            ItemDataUpdater.downloadFoodDataAndImageIfMissing(newItem, database, MainActivity.this);
+                        }
 
-                            reloadAllItems();
-                            runOnUiThread(() -> Toast.makeText(MainActivity.this, "Item saved successfully", Toast.LENGTH_SHORT).show());
-
-                            ItemDataUpdater.downloadFoodDataAndImage(newItem, database, MainActivity.this, adapter);
-                        }).start());
+                        runOnUiThread(() -> Toast.makeText(MainActivity.this, "Item saved successfully", Toast.LENGTH_SHORT).show());
+                    });
+                    if (!queued) {
+                        Toast.makeText(this, TaskPool.BUSY_MESSAGE, Toast.LENGTH_LONG).show();
+                    }
+                });
+        if (prefetch != null) {
+            // Dismissed by the cancel button, back or a tap outside, unless the item was saved
+            dialog.setOnDismissListener(d -> {
+                if (!saved[0]) {
+                    prefetch.discard();
+                }
+            });
+        }
         dialog.show();
     }
 
-    private void showDeleteItemDialog(FoodItem item) {
+    private boolean refreshItemData(FoodListRow row) {
+        Future<?> task = tasks.submit(AppExecutors.db(), () -> {
+            FoodItem item = database.foodItemDao().getById(row.getId());
+            if (item != null) {
+                ItemDataUpdater.downloadFoodDataAndImage(item, database, MainActivity.this);
+            }
+        });
+        if (task.isCancelled()) {
+            Toast.makeText(this, TaskPool.BUSY_MESSAGE, Toast.LENGTH_LONG).show();
+        }
+        return true;
+    }
+
+    private void showDeleteItemDialog(FoodListRow row) {
         DeleteItemDialog dialog = new DeleteItemDialog(this, quantityToRemove -> {
             // Perform DB operation on background thread
-            new Thread(() -> {
+            boolean queued = AppExecutors.db().tryExecute(() -> {
                 String toastText;
-                if (quantityToRemove >= item.getCount()) {
-                    database.foodItemDao().delete(item);
+                if (database.foodItemDao().removeQuantity(row.getId(), quantityToRemove) == 0) {
+                    ImageStore.deleteUnreferenced(database);
                     toastText = "Item removed";
                 } else {
-                    database.foodItemDao().reduceQuantity(item.getId(), quantityToRemove);
                     toastText = "Item quantity reduced";
                 }
 
-                // Update RecyclerView with latest database state
-                List<FoodItem> foodItems = database.foodItemDao().getAllItemsSorted();
-                runOnUiThread(() -> {
-                    adapter.setItems(foodItems);
-                    Toast.makeText(MainActivity.this, toastText, Toast.LENGTH_SHORT).show();
-                });
-            }).start();
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, toastText, Toast.LENGTH_SHORT).show());
+            });
+            if (!queued) {
+                Toast.makeText(this, TaskPool.BUSY_MESSAGE, Toast.LENGTH_LONG).show();
+            }
         });
 
         dialog.show();
     }
 
     private void openDatabase() {
-        database = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, Constants.DATABASE_NAME).build();
+        database = AppDatabase.getInstance(this);
     }
 }
@@ -0,0 +1,182 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+public class Migrations {
+
+    /**
+     * Moves the image BLOBs out of {@code food_items} into the content-addressed
+     * {@code product_images} table. SQLite on older devices cannot drop columns, so the item
+     * table is rebuilt without {@code imageData}.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `product_images` (`hash` TEXT NOT NULL, `data` BLOB, PRIMARY KEY(`hash`))");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `food_items_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, `barcode` TEXT, `expiryDay` INTEGER NOT NULL, `expiryMonth` INTEGER NOT NULL, `expiryYear` INTEGER NOT NULL, `count` INTEGER NOT NULL, `imageHash` TEXT)");
+            db.execSQL("INSERT INTO `food_items_new` (`id`, `name`, `brands`, `imageUrl`, `barcode`, `expiryDay`, `expiryMonth`, `expiryYear`, `count`) " +
+                    "SELECT `id`, `name`, `brands`, `imageUrl`, `barcode`, `expiryDay`, `expiryMonth`, `expiryYear`, `count` FROM `food_items`");
+
+            try (Cursor cursor = db.query("SELECT `id`, `imageData` FROM `food_items` WHERE `imageData` IS NOT NULL")) {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    byte[] imageData = cursor.getBlob(1);
+                    String hash = ImageStore.hash(imageData);
+                    db.execSQL("INSERT OR IGNORE INTO `product_images` (`hash`, `data`) VALUES (?, ?)", new Object[]{hash, imageData});
+                    db.execSQL("UPDATE `food_items_new` SET `imageHash` = ? WHERE `id` = ?", new Object[]{hash, id});
+                }
+            }
+
+            db.execSQL("DROP TABLE `food_items`");
+            db.execSQL("ALTER TABLE `food_items_new` RENAME TO `food_items`");
+        }
+    };
+
+    /**
+     * Adds the {@code product_cache} table for Open Food Facts lookups.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `product_cache` (`barcode` TEXT NOT NULL, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, `found` INTEGER NOT NULL, `fetchedAt` INTEGER NOT NULL, PRIMARY KEY(`barcode`))");
+        }
+    };
+
+    /**
+     * Adds the indexed {@code expiryEpochDay} column and an index on {@code barcode}. The table is
+     * rebuilt so the new column has no default value, matching the entity. Epoch days are computed
+     * with {@link ExpiryDates} so migrated rows sort exactly like newly inserted ones.
+     */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `food_items_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, `barcode` TEXT, `expiryDay` INTEGER NOT NULL, `expiryMonth` INTEGER NOT NULL, `expiryYear` INTEGER NOT NULL, `expiryEpochDay` INTEGER NOT NULL, `count` INTEGER NOT NULL, `imageHash` TEXT)");
+            db.execSQL("INSERT INTO `food_items_new` (`id`, `name`, `brands`, `imageUrl`, `barcode`, `expiryDay`, `expiryMonth`, `expiryYear`, `expiryEpochDay`, `count`, `imageHash`) " +
+                    "SELECT `id`, `name`, `brands`, `imageUrl`, `barcode`, `expiryDay`, `expiryMonth`, `expiryYear`, 0, `count`, `imageHash` FROM `food_items`");
+
+            try (Cursor cursor = db.query("SELECT DISTINCT `expiryYear`, `expiryMonth`, `expiryDay` FROM `food_items_new`")) {
+                while (cursor.moveToNext()) {
+                    int year = cursor.getInt(0);
+                    int month = cursor.getInt(1);
+                    int day = cursor.getInt(2);
+                    db.execSQL("UPDATE `food_items_new` SET `expiryEpochDay` = ? WHERE `expiryYear` = ? AND `expiryMonth` = ? AND `expiryDay` = ?",
+                            new Object[]{ExpiryDates.toEpochDay(year, month, day), year, month, day});
+                }
+            }
+
+            db.execSQL("DROP TABLE `food_items`");
+            db.execSQL("ALTER TABLE `food_items_new` RENAME TO `food_items`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_food_items_expiryEpochDay_id` ON `food_items` (`expiryEpochDay`, `id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_food_items_barcode` ON `food_items` (`barcode`)");
+        }
+    };
+
+    /**
+     * Adds {@code thumbHash}, the small list variant of an item's image. Existing items keep
+     * showing their full image until it is downloaded again.
+     */
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `food_items` ADD COLUMN `thumbHash` TEXT");
+        }
+    };
+
+    /**
+     * Adds the {@code food_items_fts} full-text index with the triggers Room uses to keep it in
+     * sync, and builds it from the existing items.
+     */
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `food_items_fts` USING FTS4(`name` TEXT, `brands` TEXT, `barcode` TEXT, tokenize=unicode61, content=`food_items`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_food_items_fts_BEFORE_UPDATE BEFORE UPDATE ON `food_items` BEGIN DELETE FROM `food_items_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_food_items_fts_BEFORE_DELETE BEFORE DELETE ON `food_items` BEGIN DELETE FROM `food_items_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_food_items_fts_AFTER_UPDATE AFTER UPDATE ON `food_items` BEGIN INSERT INTO `food_items_fts`(`docid`, `name`, `brands`, `barcode`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`brands`, NEW.`barcode`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_food_items_fts_AFTER_INSERT AFTER INSERT ON `food_items` BEGIN INSERT INTO `food_items_fts`(`docid`, `name`, `brands`, `barcode`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`brands`, NEW.`barcode`); END");
+            db.execSQL("INSERT INTO `food_items_fts`(`food_items_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * Adds the {@code catalog_products} table for offline lookups. It starts out empty and is
+     * filled by importing an Open Food Facts export.
+     */
+    public static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `catalog_products` (`barcode` TEXT NOT NULL, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, PRIMARY KEY(`barcode`))");
+        }
+    };
+
+    /**
+     * Splits {@code food_items} into {@code products}, one per barcode, and {@code stock_lots},
+     * one per item, and replaces the table with a view joining both. Each barcode's product takes
+     * its data from the newest item that has a name. Items without a barcode get a product of
+     * their own, created with the item's id so their lot can be linked to it. Lots keep the item
+     * ids, so exports and open screens still refer to the same items. The full-text index moves to
+     * the products.
+     */
+    public static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `products` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `barcode` TEXT, `name` TEXT, `brands` TEXT, `imageUrl` TEXT, `imageHash` TEXT, `thumbHash` TEXT)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_products_barcode` ON `products` (`barcode`)");
+            db.execSQL("INSERT INTO `products` (`id`, `barcode`, `name`, `brands`, `imageUrl`, `imageHash`, `thumbHash`) " +
+                    "SELECT `id`, NULL, `name`, `brands`, `imageUrl`, `imageHash`, `thumbHash` FROM `food_items` WHERE `barcode` IS NULL OR `barcode` = ''");
+            db.execSQL("INSERT INTO `products` (`barcode`, `name`, `brands`, `imageUrl`, `imageHash`, `thumbHash`) " +
+                    "SELECT `barcode`, `name`, `brands`, `imageUrl`, `imageHash`, `thumbHash` FROM `food_items` AS `item` " +
+                    "WHERE `barcode` != '' AND `id` = (SELECT `id` FROM `food_items` WHERE `barcode` = `item`.`barcode` " +
+                    "ORDER BY `name` IS NULL OR `name` = '', `id` DESC LIMIT 1)");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `stock_lots` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `productId` INTEGER NOT NULL, `expiryDay` INTEGER NOT NULL, `expiryMonth` INTEGER NOT NULL, `expiryYear` INTEGER NOT NULL, `expiryEpochDay` INTEGER NOT NULL, `count` INTEGER NOT NULL, " +
+                    "FOREIGN KEY(`productId`) REFERENCES `products`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("INSERT INTO `stock_lots` (`id`, `productId`, `expiryDay`, `expiryMonth`, `expiryYear`, `expiryEpochDay`, `count`) " +
+                    "SELECT `food_items`.`id`, COALESCE(`products`.`id`, `food_items`.`id`), `expiryDay`, `expiryMonth`, `expiryYear`, `expiryEpochDay`, `count` " +
+                    "FROM `food_items` LEFT JOIN `products` ON `products`.`barcode` = `food_items`.`barcode`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_stock_lots_expiryEpochDay_id` ON `stock_lots` (`expiryEpochDay`, `id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_stock_lots_productId` ON `stock_lots` (`productId`)");
+
+            db.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_food_items_fts_BEFORE_UPDATE");
+            db.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_food_items_fts_BEFORE_DELETE");
+            db.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_food_items_fts_AFTER_UPDATE");
+            db.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_food_items_fts_AFTER_INSERT");
+            db.execSQL("DROP TABLE IF EXISTS `food_items_fts`");
+            db.execSQL("DROP TABLE `food_items`");
+            db.execSQL("CREATE VIEW `food_items` AS " + FoodItem.VIEW_QUERY);
+
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `products_fts` USING FTS4(`name` TEXT, `brands` TEXT, `barcode` TEXT, tokenize=unicode61, content=`products`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_UPDATE BEFORE UPDATE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_DELETE BEFORE DELETE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_UPDATE AFTER UPDATE ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `brands`, `barcode`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`brands`, NEW.`barcode`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_INSERT AFTER INSERT ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `brands`, `barcode`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`brands`, NEW.`barcode`); END");
+            db.execSQL("INSERT INTO `products_fts`(`products_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /**
+     * Merges lots of the same product and expiry date into the oldest one, adding up their
+     * counts, and makes (product, expiry) unique. The unique index also serves the foreign key,
+     * so the plain index on {@code productId} is dropped.
+     */
+    public static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("UPDATE `stock_lots` SET `count` = (SELECT SUM(`count`) FROM `stock_lots` AS `other` " +
+                    "WHERE `other`.`productId` = `stock_lots`.`productId` AND `other`.`expiryEpochDay` = `stock_lots`.`expiryEpochDay`) " +
+                    "WHERE `id` IN (SELECT MIN(`id`) FROM `stock_lots` GROUP BY `productId`, `expiryEpochDay` HAVING COUNT(*) > 1)");
+            db.execSQL("DELETE FROM `stock_lots` WHERE `id` NOT IN (SELECT MIN(`id`) FROM `stock_lots` GROUP BY `productId`, `expiryEpochDay`)");
+            db.execSQL("DROP INDEX IF EXISTS `index_stock_lots_productId`");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_stock_lots_productId_expiryEpochDay` ON `stock_lots` (`productId`, `expiryEpochDay`)");
+        }
+    };
+
+    /**
+     * All migrations, for databases created with schema version 5 or later.
+     */
+    public static final Migration[] ALL = {MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13};
+}
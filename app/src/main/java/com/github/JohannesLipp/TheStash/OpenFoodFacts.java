@@ -2,26 +2,37 @@ package com.github.JohannesLipp.TheStash;
 
 import android.util.Log;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonToken;
 
-import org.json.JSONException;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 public class OpenFoodFacts {
 
     private static final String TAG = "OpenFoodFacts";
-    // Staging API base URL for products:
-    private static final String STAGING_API_URL = "https://staging.openfoodfacts.org/api/v2/product/";
-    // For V3, it would be "https://staging.openfoodfacts.org/api/v3/product/" - adjust if needed based on exact endpoint
+
+    private static final String FIELD_PRODUCT_NAME = "product_name";
+    private static final String FIELD_PRODUCT_NAME_PREFIX = "product_name_";
+    private static final String FIELD_BRANDS = "brands";
+    private static final String FIELD_IMAGE_URL = "image_url";
+    // Language of the localized name used if there is none in the device language
+    private static final String FALLBACK_LANGUAGE = "de";
+
+    private static final int MAX_ERROR_BODY_CHARS = 500;
+
+    private static volatile HttpClient httpClient = new UrlConnectionHttpClient(
+            Constants.HTTP_CONNECT_TIMEOUT_MS, Constants.HTTP_READ_TIMEOUT_MS, Constants.HTTP_USER_AGENT);
+    private static volatile String baseUrl = Constants.OPEN_FOOD_FACTS_BASE_URL;
 
     public interface ProductDataCallback {
         void onSuccess(OpenFoodFactsResultDTO results);
@@ -29,83 +40,75 @@ public class OpenFoodFacts {
         void onError(String errorMessage);
     }
 
-    public static void fetchProductData(FoodItem foodItem, ExecutorService executorService, ProductDataCallback callback) {
-        if (foodItem.getBarcode() == null || foodItem.getBarcode().trim().isEmpty()) {
-            callback.onError("Barcode cannot be empty.");
-            return;
-        }
-
-        Log.d(TAG, "Fetching product data for barcode: " + foodItem.getBarcode());
-        executorService.execute(() -> {
-            HttpURLConnection urlConnection = null;
-            String productJsonString;
-
-            try {
-                URL url = new URL(STAGING_API_URL + foodItem.getBarcode() + ".json");
-                Log.d(TAG, "Requesting URL: " + url);
-
-                urlConnection = (HttpURLConnection) url.openConnection();
-                urlConnection.setRequestMethod("GET");
-                urlConnection.connect();
-
-                // Check server response
-                Log.d(TAG, "Response code: " + urlConnection.getResponseCode());
-                int responseCode = urlConnection.getResponseCode();
-                if (responseCode != HttpURLConnection.HTTP_OK) {
-                    Log.e(TAG, "Server returned HTTP error code: " + responseCode + " for URL: " + url);
-                    // Read error stream if available
-                    InputStream errorStream = urlConnection.getErrorStream();
-                    String errorResponse = "Server error (HTTP " + responseCode + ")";
-                    if (errorStream != null) {
-                        errorResponse += ": " + readStream(errorStream);
-                    }
-                    final String finalErrorResponse = errorResponse;
-                    // Ensure callback is on main thread if updating UI, not strictly necessary here
-                    // but good practice if callback were to interact with UI directly.
-                    // For now, invoking directly from executor thread.
-                    callback.onError(finalErrorResponse);
-                    return;
+    /**
+     * Looks up the product with the given barcode. Blocks until the request has completed, so it
+     * must be called from a background thread.
+     *
+     * @param barcode The barcode of the product.
+     * @return The product data, or null if Open Food Facts does not know the product.
+     * @throws IOException If the request fails or the response cannot be parsed.
+     */
+    public static OpenFoodFactsResultDTO lookup(String barcode) throws IOException {
+        String url = getProductUrl(barcode);
+        Log.d(TAG, "Requesting URL: " + url);
+
+        try (HttpResponse response = httpClient.get(url)) {
+            // Check server response; unknown products are reported as 404 with a regular status body
+            int responseCode = response.getCode();
+            Log.d(TAG, "Response code: " + responseCode + (response.isRevalidated() ? " (revalidated)" : ""));
+            if (!response.isSuccessful() && responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
+                Log.e(TAG, "Server returned HTTP error code: " + responseCode + " for URL: " + url);
+                String errorResponse = "Server error (HTTP " + responseCode + ")";
+                String errorBody = readStream(response.getBody());
+                if (errorBody != null) {
+                    errorResponse += ": " + errorBody;
                 }
+                throw new IOException(errorResponse);
+            }
 
-                Log.d(TAG, "Successfully connected to server.");
-                InputStream inputStream = urlConnection.getInputStream();
-                if (inputStream == null) {
-                    Log.e(TAG, "No data received from server.");
-                    callback.onError("No data received from server.");
-                    return;
-                }
+            return parseProduct(response.getBody());
+        }
+    }
 
-                productJsonString = readStream(inputStream);
-                Log.d(TAG, "Raw JSON Response: " + productJsonString);
+    /**
+     * Replaces the HTTP client and the product API base URL, e.g. to use another Open Food Facts
+     * instance or a local stub server.
+     */
+    public static void configure(HttpClient httpClient, String baseUrl) {
+        OpenFoodFacts.httpClient = httpClient;
+        OpenFoodFacts.baseUrl = baseUrl;
+    }
 
-                if (productJsonString != null && !productJsonString.isEmpty()) {
-                    Log.d(TAG, "Parsing JSON response...");
-                    parseProductJson(productJsonString, callback);
-                } else {
-                    Log.e(TAG, "Empty response from server.");
-                    callback.onError("Empty response from server.");
-                }
+    public static HttpClient getHttpClient() {
+        return httpClient;
+    }
 
-            } catch (IOException e) {
-                Log.e(TAG, "Error during network operation", e);
-                callback.onError("Network error: " + e.getMessage());
-            } catch (JSONException e) {
-                Log.e(TAG, "Error parsing JSON response", e);
-                callback.onError("JSON parsing error: " + e.getMessage());
-            } finally {
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-            }
-        });
+    public static String getProductUrl(String barcode) {
+        return baseUrl + barcode + ".json?fields=" + String.join(",", requestedFields());
+    }
+
+    /**
+     * The product fields the app uses; everything else is left out of the response by the API.
+     */
+    static List<String> requestedFields() {
+        List<String> fields = new ArrayList<>(Arrays.asList(FIELD_PRODUCT_NAME, FIELD_PRODUCT_NAME_PREFIX + FALLBACK_LANGUAGE, FIELD_BRANDS, FIELD_IMAGE_URL));
+        String language = Locale.getDefault().getLanguage();
+        if (!language.isEmpty() && !language.equals(FALLBACK_LANGUAGE)) {
+            fields.add(FIELD_PRODUCT_NAME_PREFIX + language);
+        }
+        return fields;
     }
 
+    /**
+     * Reads up to {@link #MAX_ERROR_BODY_CHARS} of an error response for diagnostics.
+     */
     private static String readStream(InputStream inputStream) throws IOException {
         StringBuilder buffer = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            buffer.append(line).append("\n");
+        Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        char[] chunk = new char[1024];
+        int read;
+        while (buffer.length() < MAX_ERROR_BODY_CHARS && (read = reader.read(chunk)) != -1) {
+            buffer.append(chunk, 0, read);
         }
         if (buffer.length() == 0) {
             return null;
@@ -113,38 +116,85 @@ public class OpenFoodFacts {
         return buffer.toString();
     }
 
-    private static void parseProductJson(String jsonString, ProductDataCallback callback) throws JSONException {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            // Read the entire JSON string into a Jackson JsonNode
-            JsonNode rootNode = objectMapper.readTree(jsonString);
-            Log.d(TAG, "JSON root node: " + rootNode);
-
-            // Check status (using Jackson's navigation)
-            int status = rootNode.path("status").asInt(0);
-            String statusVerbose = rootNode.path("status_verbose").asText("unknown status");
-            Log.d(TAG, "Status: " + status + ", Status verbose: " + statusVerbose);
-
-            if (status == 1) {
-                JsonNode productNode = rootNode.path("product"); // Get the "product" node
-                if (productNode.isMissingNode() || !productNode.isObject()) {
-                    Log.w(TAG, "Product node is missing or not an object. Status verbose: " + statusVerbose);
-                    callback.onError("Product data structure error: " + statusVerbose);
-                    return;
+    /**
+     * Parses a product response straight from the stream. Only the fields needed for
+     * {@link OpenFoodFactsResultDTO} are read; all other values are skipped without being
+     * materialized.
+     *
+     * @return The product data, or null if the response reports the product as not found.
+     * @throws IOException If the stream cannot be read or does not contain a product response.
+     */
+    static OpenFoodFactsResultDTO parseProduct(InputStream inputStream) throws IOException {
+        String localizedNameField = FIELD_PRODUCT_NAME_PREFIX + Locale.getDefault().getLanguage();
+        int status = 0;
+        String statusVerbose = "unknown status";
+        OpenFoodFactsResultDTO product = null;
+
+        try (JsonParser parser = Json.MAPPER.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Empty or malformed response from server.");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field)) {
+                    status = parser.getValueAsInt(0);
+                } else if ("status_verbose".equals(field)) {
+                    statusVerbose = parser.getValueAsString(statusVerbose);
+                } else if ("product".equals(field) && value == JsonToken.START_OBJECT) {
+                    product = parseProductObject(parser, localizedNameField);
+                } else {
+                    parser.skipChildren();
                 }
+            }
+        } catch (JsonProcessingException e) {
+            Log.e(TAG, "Jackson JSON processing error", e);
+            throw new IOException("JSON parsing error: " + e.getMessage(), e);
+        }
 
-                Log.d(TAG, "Deserializing product node: " + productNode);
-                OpenFoodFactsResultDTO productDTO = objectMapper.treeToValue(productNode, OpenFoodFactsResultDTO.class);
-                Log.d(TAG, "Successfully deserialized product: " + productDTO);
+        Log.d(TAG, "Status: " + status + ", Status verbose: " + statusVerbose);
+        if (status != 1) {
+            Log.w(TAG, "Product not found or status indicates error. Status verbose: " + statusVerbose);
+            return null;
+        }
+        if (product == null) {
+            Log.w(TAG, "Product node is missing or not an object. Status verbose: " + statusVerbose);
+            throw new IOException("Product data structure error: " + statusVerbose);
+        }
+        Log.d(TAG, "Successfully parsed product: " + product);
+        return product;
+    }
 
-                callback.onSuccess(productDTO);
+    private static OpenFoodFactsResultDTO parseProductObject(JsonParser parser, String localizedNameField) throws IOException {
+        String productName = null;
+        String fallbackLanguageName = null;
+        String localizedName = null;
+        String brands = null;
+        String imageUrl = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (FIELD_PRODUCT_NAME.equals(field)) {
+                productName = parser.getValueAsString();
+            } else if (localizedNameField.equals(field)) {
+                localizedName = parser.getValueAsString();
+            } else if ((FIELD_PRODUCT_NAME_PREFIX + FALLBACK_LANGUAGE).equals(field)) {
+                fallbackLanguageName = parser.getValueAsString();
+            } else if (FIELD_BRANDS.equals(field)) {
+                brands = parser.getValueAsString();
+            } else if (FIELD_IMAGE_URL.equals(field)) {
+                imageUrl = parser.getValueAsString();
             } else {
-                Log.w(TAG, "Product not found or status indicates error. Status verbose: " + statusVerbose);
-                callback.onError("Product not found: " + statusVerbose);
+                parser.skipChildren();
             }
-        } catch (JsonProcessingException e) {
-            Log.e(TAG, "Jackson JSON processing error", e);
-            callback.onError("JSON parsing error: " + e.getMessage());
         }
+
+        // Prefer the device language, then German, then the product's main name
+        if (localizedName == null || localizedName.isEmpty()) {
+            localizedName = fallbackLanguageName;
+        }
+        return new OpenFoodFactsResultDTO(productName, localizedName, brands, imageUrl);
     }
 }
@@ -2,41 +2,30 @@ package com.github.JohannesLipp.TheStash;
 
 import androidx.annotation.NonNull;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
-@JsonIgnoreProperties(ignoreUnknown = true)
+/**
+ * Product data from Open Food Facts. Built by the streaming parser in
+ * {@link OpenFoodFacts#parseProduct(java.io.InputStream)}, which picks the localized name, and
+ * from the product cache and catalog; it is not bound from JSON directly.
+ */
 public class OpenFoodFactsResultDTO {
-    @JsonIgnore
     private int id;
 
-    @JsonProperty("product_name")
     private final String productName;
-    @JsonProperty("product_name_de")
-    private final String productNameDE;
-    @JsonProperty("brands")
+    // Name in the device language, or in the parser's fallback language if there is none
+    private final String productNameLocalized;
     private final String brands;
-    @JsonProperty("image_url")
     private final String imageUrl;
 
-    @JsonCreator
-    public OpenFoodFactsResultDTO(
-            @JsonProperty("product_name") String productName,
-            @JsonProperty("product_name_de") String productNameDE,
-            @JsonProperty("brands") String brands,
-            @JsonProperty("image_url") String imageUrl
-    ) {
+    public OpenFoodFactsResultDTO(String productName, String productNameLocalized, String brands, String imageUrl) {
         this.productName = productName;
-        this.productNameDE = productNameDE;
+        this.productNameLocalized = productNameLocalized;
         this.brands = brands;
         this.imageUrl = imageUrl;
     }
 
     public String getProductName() {
-        if (productNameDE != null && !productNameDE.isEmpty()) {
-            return productNameDE;
+        if (productNameLocalized != null && !productNameLocalized.isEmpty()) {
+            return productNameLocalized;
         } else {
             return productName;
         }
@@ -63,7 +52,7 @@ public class OpenFoodFactsResultDTO {
     public String toString() {
         return "OpenFoodFactsResultDTO{" +
                 "productName='" + productName + '\'' +
-                ", productNameDE='" + productNameDE + '\'' +
+                ", productNameLocalized='" + productNameLocalized + '\'' +
                 ", brands='" + brands + '\'' +
                 ", imageUrl='" + imageUrl + '\'' +
                 '}';
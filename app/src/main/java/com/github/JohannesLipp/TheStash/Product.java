@@ -0,0 +1,78 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Product data shared by all stock lots of one barcode: name, brands and image are stored and
+ * updated once per product instead of once per lot. Items without a barcode get a product of
+ * their own with a null barcode, which the unique index allows any number of times.
+ */
+@Entity(tableName = "products", indices = {@Index(value = "barcode", unique = true)})
+public class Product {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private final String barcode;
+    private final String name;
+    private final String brands;
+    private final String imageUrl;
+    private final String imageHash;
+    // Small variant of the image for the list; null for images stored before thumbnails existed
+    private final String thumbHash;
+
+    public Product(String barcode, String name, String brands, String imageUrl, String imageHash, String thumbHash) {
+        this.barcode = barcode;
+        this.name = name;
+        this.brands = brands;
+        this.imageUrl = imageUrl;
+        this.imageHash = imageHash;
+        this.thumbHash = thumbHash;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrands() {
+        return brands;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    public String getThumbHash() {
+        return thumbHash;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Product{" +
+                "id=" + id +
+                ", barcode='" + barcode + '\'' +
+                ", name='" + name + '\'' +
+                ", brands='" + brands + '\'' +
+                ", imageHash='" + imageHash + '\'' +
+                '}';
+    }
+}
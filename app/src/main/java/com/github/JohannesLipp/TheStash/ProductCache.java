@@ -0,0 +1,177 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves Open Food Facts lookups from the local {@code product_cache} table while they are fresh,
+ * then from the offline {@code catalog_products} table, and falls back to the network otherwise.
+ * "Product not found" answers are cached as well, with their own, usually shorter, time to live.
+ */
+public class ProductCache {
+
+    private static final String TAG = "ProductCache";
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong negativeHits = new AtomicLong();
+    private static final AtomicLong catalogHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    // Concurrent lookups of the same barcode, e.g. quick repeat scans or a scan during a bulk refresh, share one request
+    private static final SingleFlight<String, OpenFoodFactsResultDTO> lookups = new SingleFlight<>();
+    // Kept apart, so a refresh never joins a lookup that may be answered from the stale cache
+    private static final SingleFlight<String, OpenFoodFactsResultDTO> refreshes = new SingleFlight<>();
+
+    private static volatile long ttlMillis = Constants.PRODUCT_CACHE_TTL_MS;
+    private static volatile long negativeTtlMillis = Constants.PRODUCT_CACHE_NEGATIVE_TTL_MS;
+
+    public static void setTtl(long ttlMillis, long negativeTtlMillis) {
+        ProductCache.ttlMillis = ttlMillis;
+        ProductCache.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * Looks up the product with the given barcode, from the cache if possible. Must be called from
+     * a background thread.
+     *
+     * @return The product data, or null if Open Food Facts does not know the product.
+     * @throws IOException If the product is not cached and the network lookup fails.
+     */
+    public static OpenFoodFactsResultDTO lookup(AppDatabase database, String barcode) throws IOException {
+        return lookups.run(barcode, () -> lookupUncoalesced(database, barcode));
+    }
+
+    /**
+     * Looks up the product with the given barcode on the network, ignoring the cache, and stores
+     * the result. Must be called from a background thread.
+     *
+     * @return The product data, or null if Open Food Facts does not know the product.
+     * @throws IOException If the network lookup fails.
+     */
+    public static OpenFoodFactsResultDTO refresh(AppDatabase database, String barcode) throws IOException {
+        return refreshes.run(barcode, () -> fetchAndStore(database, barcode));
+    }
+
+    private static OpenFoodFactsResultDTO lookupUncoalesced(AppDatabase database, String barcode) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedProduct cached = database.productCacheDao().get(barcode);
+        boolean fresh = isFresh(cached, now);
+        if (fresh && cached.isFound()) {
+            hits.incrementAndGet();
+            return new OpenFoodFactsResultDTO(cached.getName(), null, cached.getBrands(), cached.getImageUrl());
+        }
+
+        // The catalog may know products that were not found online when they were last looked up
+        CatalogProduct product = database.catalogProductDao().get(barcode);
+        if (product != null) {
+            catalogHits.incrementAndGet();
+            return new OpenFoodFactsResultDTO(product.getName(), null, product.getBrands(), product.getImageUrl());
+        }
+
+        if (fresh) {
+            negativeHits.incrementAndGet();
+            return null;
+        }
+
+        misses.incrementAndGet();
+        return fetchAndStore(database, barcode);
+    }
+
+    /**
+     * Whether a lookup of the given barcode would be answered from the cache or the offline
+     * catalog, without a network request. Must be called from a background thread.
+     */
+    public static boolean isFresh(AppDatabase database, String barcode) {
+        return isFresh(database.productCacheDao().get(barcode), System.currentTimeMillis())
+                || database.catalogProductDao().get(barcode) != null;
+    }
+
+    private static boolean isFresh(CachedProduct cached, long now) {
+        return cached != null && now - cached.getFetchedAt() < (cached.isFound() ? ttlMillis : negativeTtlMillis);
+    }
+
+    /**
+     * Removes cache entries that are no longer fresh. They would be looked up again anyway, so
+     * keeping them only grows the table. Must be called from a background thread.
+     */
+    public static void pruneExpired(AppDatabase database) {
+        long now = System.currentTimeMillis();
+        int removed = database.productCacheDao().deleteFetchedBefore(now - ttlMillis, now - negativeTtlMillis);
+        Log.d(TAG, "Pruned " + removed + " expired product cache entries");
+    }
+
+    private static OpenFoodFactsResultDTO fetchAndStore(AppDatabase database, String barcode) throws IOException {
+        OpenFoodFactsResultDTO productData = OpenFoodFacts.lookup(barcode);
+        put(database, barcode, productData);
+        return productData;
+    }
+
+    /**
+     * Asynchronous variant of {@link #lookup(AppDatabase, String)} for a single item. Callbacks of
+     * concurrent requests for the same barcode are all served by one lookup.
+     */
+    public static void fetchProductData(AppDatabase database, FoodItem foodItem, Executor executor, OpenFoodFacts.ProductDataCallback callback) {
+        if (foodItem.getBarcode() == null || foodItem.getBarcode().trim().isEmpty()) {
+            callback.onError("Barcode cannot be empty.");
+            return;
+        }
+
+        String barcode = foodItem.getBarcode();
+        lookups.execute(barcode, executor, () -> lookupUncoalesced(database, barcode))
+                .whenComplete((productData, error) -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause != null) {
+                        Log.e(TAG, "Error during network operation", cause);
+                        callback.onError("Network error: " + cause.getMessage());
+                    } else if (productData != null) {
+                        callback.onSuccess(productData);
+                    } else {
+                        callback.onError("Product not found.");
+                    }
+                });
+    }
+
+    /**
+     * Stores a lookup result; null stores a "product not found" answer. Must be called from a
+     * background thread.
+     */
+    public static void put(AppDatabase database, String barcode, OpenFoodFactsResultDTO productData) {
+        long now = System.currentTimeMillis();
+        if (productData != null) {
+            database.productCacheDao().put(new CachedProduct(barcode, productData.getProductName(), productData.getBrands(), productData.getImageUrl(), true, now));
+        } else {
+            database.productCacheDao().put(new CachedProduct(barcode, null, null, null, false, now));
+        }
+    }
+
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    public static long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    public static long getCatalogHitCount() {
+        return catalogHits.get();
+    }
+
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    @NonNull
+    public static String getStats() {
+        return "ProductCache{hits=" + hits.get() + ", negativeHits=" + negativeHits.get() + ", catalogHits=" + catalogHits.get() + ", misses=" + misses.get() + "}";
+    }
+
+    public static void logStats() {
+        Log.d(TAG, getStats());
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+@Dao
+public interface ProductCacheDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void put(CachedProduct product);
+
+    @Query("SELECT * FROM product_cache WHERE barcode = :barcode")
+    CachedProduct get(String barcode);
+
+    /**
+     * Removes entries fetched at or before the given times, with separate cutoffs for found
+     * products and "not found" answers, as they expire after different times.
+     *
+     * @return The number of removed entries.
+     */
+    @Query("DELETE FROM product_cache WHERE fetchedAt <= CASE WHEN found THEN :foundCutoff ELSE :notFoundCutoff END")
+    int deleteFetchedBefore(long foundCutoff, long notFoundCutoff);
+}
@@ -0,0 +1,37 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the searchable columns of {@code products}. The index uses the product
+ * table as external content, so it stores no copy of the text, and Room keeps it in sync with
+ * triggers on insert, update and delete.
+ */
+// unicode61 also folds case and diacritics of non-ASCII letters, so umlauts match with or without dots
+@Fts4(contentEntity = Product.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "products_fts")
+public class ProductFts {
+    private final String name;
+    private final String brands;
+    private final String barcode;
+
+    public ProductFts(String name, String brands, String barcode) {
+        this.name = name;
+        this.brands = brands;
+        this.barcode = barcode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrands() {
+        return brands;
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Encoded product image, stored once per distinct content. Rows in {@code products} reference
+ * an image by its {@link #hash}, so list queries never have to read the image bytes.
+ */
+@Entity(tableName = "product_images")
+public class ProductImage {
+    @PrimaryKey
+    @NonNull
+    private final String hash;
+
+    private final byte[] data;
+
+    public ProductImage(@NonNull String hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+
+    @NonNull
+    public String getHash() {
+        return hash;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
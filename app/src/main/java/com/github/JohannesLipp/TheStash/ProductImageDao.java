@@ -0,0 +1,21 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+@Dao
+public interface ProductImageDao {
+
+    // Images are content-addressed, so an existing row with the same hash already holds the same bytes
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insert(ProductImage image);
+
+    @Query("SELECT data FROM product_images WHERE hash = :hash")
+    byte[] getData(String hash);
+
+    @Query("DELETE FROM product_images WHERE hash NOT IN (SELECT imageHash FROM products WHERE imageHash IS NOT NULL " +
+            "UNION SELECT thumbHash FROM products WHERE thumbHash IS NOT NULL)")
+    int deleteUnreferenced();
+}
@@ -0,0 +1,153 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Looks up a scanned product and downloads its image while the user is still entering expiry date
+ * and quantity, so a saved item shows its name and picture right away instead of after a network
+ * round trip. If the item is not saved, the lookup result stays in the product cache and the
+ * downloaded image is dropped. Products already in the stash with their data and image are not
+ * fetched again.
+ */
+public class ProductPrefetch {
+
+    private static final String TAG = "ProductPrefetch";
+
+    private static class Result {
+        final OpenFoodFactsResultDTO productData;
+        final ImageIngestor.Images images;
+
+        Result(OpenFoodFactsResultDTO productData, ImageIngestor.Images images) {
+            this.productData = productData;
+            this.images = images;
+        }
+    }
+
+    private final String barcode;
+    private final long startedAt;
+    private final CompletableFuture<Result> result;
+
+    private ProductPrefetch(String barcode, CompletableFuture<Result> result) {
+        this.barcode = barcode;
+        this.startedAt = SystemClock.elapsedRealtime();
+        this.result = result;
+    }
+
+    /**
+     * Starts looking up the product with the given barcode on the network pool.
+     *
+     * @return The running prefetch, or null if there is no barcode to look up or the network pool
+     * is saturated. Saving the item then looks the product up as usual.
+     */
+    @Nullable
+    public static ProductPrefetch start(AppDatabase database, @Nullable String barcode) {
+        if (barcode == null || barcode.trim().isEmpty()) {
+            return null;
+        }
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        boolean queued = AppExecutors.network().tryExecute(() -> {
+            try {
+                result.complete(fetch(database, barcode));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        if (!queued) {
+            return null;
+        }
+        Log.d(TAG, "Prefetching " + barcode);
+        return new ProductPrefetch(barcode, result);
+    }
+
+    private static Result fetch(AppDatabase database, String barcode) {
+        if (database.foodItemDao().hasProductDataForBarcode(barcode)) {
+            // A new lot of a stocked product shares its data and image, there is nothing to fetch
+            Log.d(TAG, "Product data already stored for " + barcode);
+            return new Result(null, null);
+        }
+
+        OpenFoodFactsResultDTO productData;
+        try {
+            productData = ProductCache.lookup(database, barcode);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        if (productData == null || productData.getImageUrl() == null || productData.getImageUrl().isEmpty()) {
+            return new Result(productData, null);
+        }
+
+        ImageIngestor.Images images = null;
+        try {
+            images = ItemDataUpdater.downloadImage(productData.getImageUrl());
+        } catch (IOException e) {
+            Log.w(TAG, "Prefetching image failed, saving product data only", e);
+        }
+        return new Result(productData, images);
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+
+    /**
+     * Inserts the given item together with the prefetched data. If the prefetch has already
+     * finished, name, brands and image are part of the insert; otherwise they are written as soon
+     * as it finishes. If it failed, the regular download is started instead, which also reports
+     * the error. Must be called from a background thread.
+     *
+     * @return The id of the inserted item.
+     */
+    public long saveWith(FoodItem item, AppDatabase database, Context context) {
+        if (result.isDone() && !result.isCompletedExceptionally() && result.join().productData != null) {
+            Result prefetched = result.join();
+            long id = database.runInTransaction(() -> {
+                item.setName(prefetched.productData.getProductName());
+                item.setBrands(prefetched.productData.getBrands());
+                item.setImageUrl(prefetched.productData.getImageUrl());
+                if (prefetched.images != null) {
+                    item.setImageHash(ImageStore.store(database, prefetched.images.detail));
+                    item.setThumbHash(ImageStore.store(database, prefetched.images.thumbnail));
+                }
+                return database.foodItemDao().insert(item);
+            });
+            item.setId(id);
+            Log.d(TAG, "Saved item " + id + " with data prefetched " + (SystemClock.elapsedRealtime() - startedAt) + " ms ago");
+            return id;
+        }
+
+        long id = database.foodItemDao().insert(item);
+        item.setId(id);
+        Context appContext = context.getApplicationContext(); // The prefetch may finish after the activity
+        result.whenComplete((prefetched, error) -> {
+            Runnable store = () -> {
+                if (error == null && prefetched.productData != null) {
+                    ItemDataUpdater.storeProductData(database, id, prefetched.productData, prefetched.images);
+                } else {
+                    ItemDataUpdater.downloadFoodDataAndImageIfMissing(item, database, appContext);
+                }
+            };
+            // Called on a background thread, so if the database pool is saturated it stores from here
+            if (!AppExecutors.db().tryExecute(store)) {
+                store.run();
+            }
+        });
+        return id;
+    }
+
+    /**
+     * Drops the prefetched data because the item is not saved. A lookup still running completes
+     * and is cached; nothing is written to the stash.
+     */
+    public void discard() {
+        result.cancel(false);
+        Log.d(TAG, "Discarded prefetch of " + barcode);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Drops repeated detections of the same barcode. A barcode held in front of the camera is
+ * detected on every frame; it only counts again once it has been out of sight for the window,
+ * so scanning two cans of the same product one after the other still adds two items.
+ */
+public class ScanDeduplicator {
+
+    private final long windowMillis;
+    private final Map<String, Long> lastSeen = new HashMap<>();
+
+    public ScanDeduplicator(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Records a detection and returns whether it is a new scan.
+     *
+     * @param nowMillis A monotonic timestamp, e.g. {@code SystemClock.elapsedRealtime()}.
+     */
+    public boolean accept(String barcode, long nowMillis) {
+        evictExpired(nowMillis);
+        Long previous = lastSeen.put(barcode, nowMillis);
+        return previous == null;
+    }
+
+    private void evictExpired(long nowMillis) {
+        Iterator<Long> seen = lastSeen.values().iterator();
+        while (seen.hasNext()) {
+            if (nowMillis - seen.next() >= windowMillis) {
+                seen.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Per-frame timings of the barcode scanner: preparing the frame (cropping) and detection.
+ * Only touched from the camera analysis thread and the detector callbacks, one frame at a time.
+ */
+public class ScanFrameStats {
+
+    private static final String TAG = "ScanFrameStats";
+
+    private static final int LOG_INTERVAL_FRAMES = 30;
+
+    private long frames;
+    private long prepareNanos;
+    private long detectNanos;
+    private long maxFrameNanos;
+
+    public synchronized void record(long prepareNanos, long detectNanos) {
+        frames++;
+        this.prepareNanos += prepareNanos;
+        this.detectNanos += detectNanos;
+        maxFrameNanos = Math.max(maxFrameNanos, prepareNanos + detectNanos);
+        if (frames % LOG_INTERVAL_FRAMES == 0) {
+            log();
+        }
+    }
+
+    public void log() {
+        Log.d(TAG, toString());
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        if (frames == 0) {
+            return "ScanFrameStats{frames=0}";
+        }
+        return String.format(Locale.ROOT, "ScanFrameStats{frames=%d, avgPrepare=%.2f ms, avgDetect=%.2f ms, maxFrame=%.2f ms}",
+                frames, prepareNanos / 1e6 / frames, detectNanos / 1e6 / frames, maxFrameNanos / 1e6);
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects barcodes from continuous scanning and inserts them into the stash in batches, all with
+ * the same expiry date. Scans of the same barcode within one batch become one item with a higher
+ * count, which the database adds to an existing lot of that barcode and date. Product data and
+ * images for products not known yet are fetched in the background after each batch is stored, so
+ * scanning never waits for the network.
+ */
+public class ScanIngestQueue {
+
+    private static final String TAG = "ScanIngestQueue";
+
+    private static final long FLUSH_DELAY_MS = 1000;
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private final AppDatabase database;
+    private final Context appContext; // Not the scanner activity, which may finish before the last batch is written
+    private final int expiryDay;
+    private final int expiryMonth;
+    private final int expiryYear;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    // Barcode to scan count of the batch being collected; main thread only
+    private final Map<String, Integer> pending = new LinkedHashMap<>();
+
+    private int scanned = 0;
+    private long firstScanAt = -1;
+
+    public ScanIngestQueue(AppDatabase database, Context context, int expiryDay, int expiryMonth, int expiryYear) {
+        this.database = database;
+        this.appContext = context.getApplicationContext();
+        this.expiryDay = expiryDay;
+        this.expiryMonth = expiryMonth;
+        this.expiryYear = expiryYear;
+    }
+
+    /**
+     * Queues one scanned item. The batch is written a moment after the last scan, or right away
+     * once it is full. Must be called from the main thread.
+     */
+    public void add(String barcode) {
+        if (firstScanAt < 0) {
+            firstScanAt = SystemClock.elapsedRealtime();
+        }
+        scanned++;
+        Integer count = pending.get(barcode);
+        pending.put(barcode, count == null ? 1 : count + 1);
+
+        mainHandler.removeCallbacks(flushRunnable);
+        if (pending.size() >= MAX_BATCH_SIZE) {
+            flush();
+        } else {
+            mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes the queued items now, e.g. when scanning ends. Must be called from the main thread.
+     */
+    public void flush() {
+        mainHandler.removeCallbacks(flushRunnable);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<FoodItem> batch = new ArrayList<>(pending.size());
+        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+            batch.add(new FoodItem(entry.getKey(), expiryDay, expiryMonth, expiryYear, entry.getValue()));
+        }
+        pending.clear();
+        Log.d(TAG, getStats());
+
+        boolean queued = AppExecutors.db().tryExecute(() -> {
+            List<Long> ids = database.foodItemDao().insertAll(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                FoodItem item = batch.get(i);
+                item.setId(ids.get(i));
+                ItemDataUpdater.downloadFoodDataAndImageIfMissing(item, database, appContext);
+            }
+            Log.d(TAG, "Inserted batch of " + batch.size() + " items");
+        });
+        if (!queued) {
+            // Keep the scans and try again later, even after scanning has ended
+            for (FoodItem item : batch) {
+                pending.merge(item.getBarcode(), item.getCount(), Integer::sum);
+            }
+            mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Number of items scanned so far. Must be called from the main thread.
+     */
+    public int getScannedCount() {
+        return scanned;
+    }
+
+    /**
+     * Must be called from the main thread.
+     */
+    public String getStats() {
+        long elapsed = firstScanAt < 0 ? 0 : SystemClock.elapsedRealtime() - firstScanAt;
+        return "ScanIngestQueue{scanned=" + scanned + ", elapsedMs=" + elapsed
+                + ", itemsPerMinute=" + (elapsed > 0 ? scanned * 60_000L / elapsed : 0) + "}";
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.lifecycle.ViewModel;
+
+/**
+ * Keeps the state of a continuous scan in {@link BarcodeScannerActivity} across configuration
+ * changes, so items are neither counted twice nor lost when the device is rotated. The last batch
+ * is written once the activity is finished for good.
+ */
+public class ScannerViewModel extends ViewModel {
+
+    private static final long DUPLICATE_WINDOW_MS = 2500;
+
+    final ScanDeduplicator deduplicator = new ScanDeduplicator(DUPLICATE_WINDOW_MS);
+    ScanIngestQueue ingestQueue; // Only set in continuous mode
+
+    @Override
+    protected void onCleared() {
+        if (ingestQueue != null) {
+            ingestQueue.flush();
+        }
+    }
+}
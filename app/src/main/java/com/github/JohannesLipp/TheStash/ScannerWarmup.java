@@ -0,0 +1,158 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.common.InputImage;
+
+/**
+ * Keeps the camera provider and the barcode scanner client ready between scans. Both are prepared
+ * while the main screen is idle, so tapping "add" only has to open the camera, and the scanner is
+ * reused by every scan instead of being created and closed each time. Under memory pressure the
+ * scanner is closed; the next scan or warm-up creates it again.
+ * <p>
+ * Also measures the time from tapping "add" to the first analysed frame. All methods must be
+ * called from the main thread.
+ */
+public class ScannerWarmup {
+
+    private static final String TAG = "ScannerWarmup";
+
+    // Just large enough for the detector to accept it; decoding it loads the native model
+    private static final int PRIMING_FRAME_SIZE = 32;
+
+    private static ListenableFuture<ProcessCameraProvider> cameraProvider;
+    private static BarcodeScanner scanner;
+    private static int scannerUsers = 0;
+    private static boolean releaseWhenUnused = false;
+
+    private static long launchedAt = 0; // 0 while no launch is being timed
+    private static boolean launchedWarm;
+    private static int warmLaunches = 0;
+    private static long warmLaunchMillis = 0;
+    private static int coldLaunches = 0;
+    private static long coldLaunchMillis = 0;
+
+    /**
+     * Starts initializing the camera provider and creates and primes the scanner, unless that has
+     * been done already.
+     */
+    public static void warmUp(Context context) {
+        if (cameraProvider == null) {
+            cameraProvider = ProcessCameraProvider.getInstance(context.getApplicationContext());
+        }
+        if (scanner == null) {
+            long start = SystemClock.elapsedRealtime();
+            scanner = ScannerConfig.GROCERY.createScanner();
+            byte[] blank = new byte[PRIMING_FRAME_SIZE * PRIMING_FRAME_SIZE * 3 / 2];
+            scanner.process(InputImage.fromByteArray(blank, PRIMING_FRAME_SIZE, PRIMING_FRAME_SIZE, 0, InputImage.IMAGE_FORMAT_NV21))
+                    .addOnCompleteListener(task -> Log.d(TAG, "Scanner primed in " + (SystemClock.elapsedRealtime() - start) + " ms"));
+        }
+        releaseWhenUnused = false;
+    }
+
+    /**
+     * Whether the next scan will find camera provider and scanner ready, i.e. the scanner is not
+     * about to be released either.
+     */
+    public static boolean isWarm() {
+        return cameraProvider != null && cameraProvider.isDone() && scanner != null && !releaseWhenUnused;
+    }
+
+    public static ListenableFuture<ProcessCameraProvider> getCameraProvider(Context context) {
+        if (cameraProvider == null) {
+            cameraProvider = ProcessCameraProvider.getInstance(context.getApplicationContext());
+        }
+        return cameraProvider;
+    }
+
+    /**
+     * Returns the shared scanner, creating it if needed. Callers must not close it, but hand it
+     * back with {@link #releaseScanner()} when they are done.
+     */
+    public static BarcodeScanner acquireScanner() {
+        if (scanner == null) {
+            scanner = ScannerConfig.GROCERY.createScanner();
+        }
+        scannerUsers++;
+        return scanner;
+    }
+
+    public static void releaseScanner() {
+        scannerUsers--;
+        if (scannerUsers == 0 && releaseWhenUnused) {
+            closeScanner();
+        }
+    }
+
+    /**
+     * Closes the scanner when memory runs low or the app is in the background. A scanner still in
+     * use is closed once it is released. The camera provider is kept; it holds no camera while
+     * nothing is bound.
+     */
+    public static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            if (scannerUsers > 0) {
+                releaseWhenUnused = true;
+            } else {
+                closeScanner();
+            }
+        }
+    }
+
+    private static void closeScanner() {
+        if (scanner != null) {
+            scanner.close();
+            scanner = null;
+            Log.d(TAG, "Released scanner");
+        }
+        releaseWhenUnused = false;
+    }
+
+    /**
+     * Starts timing a scan launch; call right before starting the scanner activity.
+     */
+    public static void markLaunch() {
+        launchedAt = SystemClock.elapsedRealtime();
+        launchedWarm = isWarm();
+    }
+
+    /**
+     * Ends the timing started by {@link #markLaunch()} once the first frame has been analysed.
+     * Later frames and scans started without a launch mark are ignored.
+     */
+    public static void markFirstFrame() {
+        if (launchedAt == 0) {
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - launchedAt;
+        launchedAt = 0;
+        if (launchedWarm) {
+            warmLaunches++;
+            warmLaunchMillis += elapsed;
+        } else {
+            coldLaunches++;
+            coldLaunchMillis += elapsed;
+        }
+        Log.i(TAG, "First frame analysed " + elapsed + " ms after launch (" + (launchedWarm ? "warm" : "cold") + ")");
+    }
+
+    @NonNull
+    public static String getStats() {
+        return "ScannerWarmup{warmLaunches=" + warmLaunches + ", avgWarmMs=" + (warmLaunchMillis / Math.max(1, warmLaunches))
+                + ", coldLaunches=" + coldLaunches + ", avgColdMs=" + (coldLaunchMillis / Math.max(1, coldLaunches)) + "}";
+    }
+
+    public static void logStats() {
+        Log.d(TAG, getStats());
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.JohannesLipp.TheStash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Registry of requests in flight. Concurrent requests for the same key share a single call of the
+ * loader and all receive its result. Once a request has completed, the next request for the key
+ * calls the loader again, so callers remain responsible for caching results.
+ *
+ * @param <K> The key type, e.g. a barcode or URL.
+ * @param <V> The result type.
+ */
+public class SingleFlight<K, V> {
+
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the request in flight for the given key, or starts the loader on the given executor if
+     * there is none. The returned future completes exceptionally if the loader throws.
+     */
+    public CompletableFuture<V> execute(K key, Executor executor, Loader<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> load(key, created, loader));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Joins the request in flight for the given key and waits for its result, or calls the loader
+     * on the current thread if there is none.
+     */
+    public V run(K key, Loader<V> loader) throws IOException {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        load(key, created, loader);
+        return await(created);
+    }
+
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    private void load(K key, CompletableFuture<V> future, Loader<V> loader) {
+        try {
+            future.complete(loader.load());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Waits for the given future and unwraps its failure into an {@link IOException}.
+     */
+    public static <V> V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the stash list page by page using keyset pagination on (expiry, id). Only a window of at
+ * most {@link #MAX_ROWS} rows around the scroll position is held in memory: loading a page at one
+ * end drops rows at the other end, and scrolling back loads them again. All state is owned by the
+ * main thread; queries run in the background.
+ * <p>
+ * The pager observes the {@code food_items} view, and so the product and lot tables behind it,
+ * through Room's invalidation tracker and reloads by itself after writes, so callers never need
+ * to trigger a reload. Bursts of writes are debounced into one reload, and changes made while the
+ * activity is stopped are picked up when it starts again.
+ * <p>
+ * While a search query is set, the pager shows the best {@link #SEARCH_LIMIT} matches from the
+ * full-text index instead of pages of the whole stash.
+ */
+public class StashPager implements FoodAdapter.LoadMoreListener, DefaultLifecycleObserver {
+
+    private static final String TAG = "StashPager";
+
+    public static final int PAGE_SIZE = 50;
+
+    public static final int SEARCH_LIMIT = 200;
+
+    // Rows kept around the scroll position; several screens in both directions
+    public static final int MAX_ROWS = 4 * PAGE_SIZE;
+
+    private static final long REFRESH_DEBOUNCE_MS = 150;
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+
+    private final AppDatabase database;
+    private final LifecycleOwner owner;
+    private final FoodAdapter adapter;
+    private final TaskScope tasks;
+
+    private final List<FoodListRow> rows = new ArrayList<>();
+    private boolean loading = false;
+    private boolean endReached = false;
+    private boolean startReached = true; // Whether the window starts at the first row of the stash
+    private int generation = 0; // Incremented on refresh, so results of outdated loads are dropped
+    private boolean refreshWhenStarted = false;
+    private String matchQuery = null; // FTS expression of the current search, null to show the whole stash
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable debouncedRefresh = this::refreshIfStarted;
+    private final Runnable debouncedSearch = () -> {
+        rows.clear(); // Start over with one page or one set of matches
+        startReached = true;
+        refresh();
+    };
+    private final InvalidationTracker.Observer tableObserver = new InvalidationTracker.Observer("food_items") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            // Called on a background thread; restart the debounce window on every change
+            mainHandler.removeCallbacks(debouncedRefresh);
+            mainHandler.postDelayed(debouncedRefresh, REFRESH_DEBOUNCE_MS);
+        }
+    };
+
+    /**
+     * Starts observing the database and loads the first page. Must be called from the main thread.
+     */
+    public StashPager(AppDatabase database, LifecycleOwner owner, FoodAdapter adapter, TaskScope tasks) {
+        this.database = database;
+        this.owner = owner;
+        this.adapter = adapter;
+        this.tasks = tasks;
+        adapter.setLoadMoreListener(this);
+        database.getInvalidationTracker().addObserver(tableObserver);
+        owner.getLifecycle().addObserver(this);
+        refresh();
+    }
+
+    /**
+     * Loads the next page after the last loaded row, unless a load is already running or all rows
+     * have been loaded, and drops rows from the start of the window beyond {@link #MAX_ROWS}.
+     * Must be called from the main thread.
+     */
+    @Override
+    public void onLoadMore() {
+        if (loading || endReached || matchQuery != null) {
+            return;
+        }
+        loading = true;
+
+        final int requestGeneration = generation;
+        final int afterExpiryEpochDay;
+        final long afterId;
+        if (rows.isEmpty()) {
+            afterExpiryEpochDay = Integer.MIN_VALUE;
+            afterId = Long.MIN_VALUE;
+        } else {
+            FoodListRow last = rows.get(rows.size() - 1);
+            afterExpiryEpochDay = last.getExpiryEpochDay();
+            afterId = last.getId();
+        }
+
+        Future<?> load = tasks.submit(AppExecutors.db(), () -> {
+            List<FoodListRow> page = database.foodItemDao().getListRowsAfter(afterExpiryEpochDay, afterId, PAGE_SIZE);
+            Log.d(TAG, "Loaded page of " + page.size() + " rows after (" + afterExpiryEpochDay + ", " + afterId + ")");
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                endReached = page.size() < PAGE_SIZE;
+                rows.addAll(page);
+                if (rows.size() > MAX_ROWS) {
+                    rows.subList(0, rows.size() - MAX_ROWS).clear();
+                    startReached = false;
+                }
+                adapter.setItems(new ArrayList<>(rows));
+            });
+        });
+        if (load.isCancelled()) {
+            loading = false; // Rejected; the next scroll tries again
+        }
+    }
+
+    /**
+     * Loads the page before the first row of the window after rows were dropped there, and drops
+     * rows from the end of the window beyond {@link #MAX_ROWS}. Must be called from the main
+     * thread.
+     */
+    @Override
+    public void onLoadPrevious() {
+        if (loading || startReached || matchQuery != null || rows.isEmpty()) {
+            return;
+        }
+        loading = true;
+
+        final int requestGeneration = generation;
+        FoodListRow first = rows.get(0);
+        final int beforeExpiryEpochDay = first.getExpiryEpochDay();
+        final long beforeId = first.getId();
+
+        Future<?> load = tasks.submit(AppExecutors.db(), () -> {
+            List<FoodListRow> page = database.foodItemDao().getListRowsBefore(beforeExpiryEpochDay, beforeId, PAGE_SIZE);
+            Log.d(TAG, "Loaded page of " + page.size() + " rows before (" + beforeExpiryEpochDay + ", " + beforeId + ")");
+            Collections.reverse(page);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                startReached = page.size() < PAGE_SIZE;
+                rows.addAll(0, page);
+                if (rows.size() > MAX_ROWS) {
+                    rows.subList(MAX_ROWS, rows.size()).clear();
+                    endReached = false;
+                }
+                adapter.setItems(new ArrayList<>(rows));
+            });
+        });
+        if (load.isCancelled()) {
+            loading = false; // Rejected; the next scroll tries again
+        }
+    }
+
+    /**
+     * Returns the number of rows the window currently holds. Must be called from the main thread.
+     */
+    int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Returns whether a page, a reload or a search is being loaded. Must be called from the main
+     * thread.
+     */
+    boolean isLoading() {
+        return loading;
+    }
+
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        if (refreshWhenStarted) {
+            refreshWhenStarted = false;
+            refresh();
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        mainHandler.removeCallbacks(debouncedRefresh);
+        mainHandler.removeCallbacks(debouncedSearch);
+        database.getInvalidationTracker().removeObserver(tableObserver);
+        owner.getLifecycle().removeObserver(this);
+    }
+
+    private void refreshIfStarted() {
+        if (owner.getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            refresh();
+        } else {
+            refreshWhenStarted = true;
+        }
+    }
+
+    /**
+     * Sets the text to search for as the user types; null or blank shows the whole stash again.
+     * The search runs once typing has paused. Must be called from the main thread.
+     */
+    public void setSearchQuery(@Nullable String text) {
+        String newMatchQuery = StashSearch.toMatchQuery(text);
+        if (Objects.equals(newMatchQuery, matchQuery)) {
+            return;
+        }
+        matchQuery = newMatchQuery;
+        mainHandler.removeCallbacks(debouncedSearch);
+        mainHandler.postDelayed(debouncedSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    /**
+     * Reloads the current window (at least one page) from its first row on, or the matches of the
+     * current search, in a single query. Database changes trigger this automatically. Must be
+     * called from the main thread.
+     */
+    public void refresh() {
+        final int requestGeneration = ++generation;
+        final String query = matchQuery;
+        final int limit = query != null ? SEARCH_LIMIT : Math.max(rows.size(), PAGE_SIZE);
+        // Keep the window where it is; ids are unique, so (expiry, id - 1) includes the first row
+        final boolean fromStart = startReached || rows.isEmpty();
+        final int afterExpiryEpochDay = fromStart ? Integer.MIN_VALUE : rows.get(0).getExpiryEpochDay();
+        final long afterId = fromStart ? Long.MIN_VALUE : rows.get(0).getId() - 1;
+        loading = true;
+
+        Future<?> load = tasks.submit(AppExecutors.db(), () -> {
+            List<FoodListRow> reloaded;
+            if (query != null) {
+                long start = SystemClock.elapsedRealtime();
+                reloaded = database.foodItemDao().search(query, limit);
+                Log.d(TAG, "Search '" + query + "' found " + reloaded.size() + " rows in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            } else {
+                reloaded = database.foodItemDao().getListRowsAfter(afterExpiryEpochDay, afterId, limit);
+                Log.d(TAG, "Reloaded " + reloaded.size() + " rows");
+            }
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                endReached = query != null || reloaded.size() < limit;
+                startReached = query != null || fromStart;
+                rows.clear();
+                rows.addAll(reloaded);
+                adapter.setItems(new ArrayList<>(rows));
+            });
+        });
+        if (load.isCancelled()) {
+            loading = false; // Rejected; try again shortly
+            mainHandler.postDelayed(debouncedRefresh, REFRESH_DEBOUNCE_MS);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Turns what the user types into an FTS {@code MATCH} expression.
+ */
+public class StashSearch {
+
+    /**
+     * Builds a query matching items that contain every typed word as a word prefix, in any of the
+     * indexed columns. Characters with a meaning in the FTS query syntax are dropped, so any input
+     * is safe to pass.
+     *
+     * @return The match expression, or null if the input contains nothing searchable.
+     */
+    @Nullable
+    public static String toMatchQuery(@Nullable String input) {
+        if (input == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        for (String word : input.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(word).append('*');
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+}
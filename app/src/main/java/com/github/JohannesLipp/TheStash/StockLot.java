@@ -0,0 +1,85 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A quantity of one product with one expiry date. There is at most one lot per product and
+ * expiry date; adding more of it increases the count. The stash list is made of lots joined with
+ * their products, see {@link FoodItem}.
+ */
+@Entity(tableName = "stock_lots",
+        foreignKeys = @ForeignKey(entity = Product.class, parentColumns = "id", childColumns = "productId", onDelete = ForeignKey.CASCADE),
+        indices = {@Index({"expiryEpochDay", "id"}), @Index(value = {"productId", "expiryEpochDay"}, unique = true)})
+public class StockLot {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private final long productId;
+    private final int expiryDay;
+    private final int expiryMonth;
+    private final int expiryYear;
+    // Derived from the three fields above; indexed for sorting and range queries
+    private int expiryEpochDay;
+    private final int count;
+
+    public StockLot(long productId, int expiryDay, int expiryMonth, int expiryYear, int count) {
+        this.productId = productId;
+        this.expiryDay = expiryDay;
+        this.expiryMonth = expiryMonth;
+        this.expiryYear = expiryYear;
+        this.count = count;
+        this.expiryEpochDay = ExpiryDates.toEpochDay(expiryYear, expiryMonth, expiryDay);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public int getExpiryDay() {
+        return expiryDay;
+    }
+
+    public int getExpiryMonth() {
+        return expiryMonth;
+    }
+
+    public int getExpiryYear() {
+        return expiryYear;
+    }
+
+    public int getExpiryEpochDay() {
+        return expiryEpochDay;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    // For Room only, the value is always derived from the expiry date
+    void setExpiryEpochDay(int expiryEpochDay) {
+        this.expiryEpochDay = expiryEpochDay;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "StockLot{" +
+                "id=" + id +
+                ", productId=" + productId +
+                ", expiryEpochDay=" + expiryEpochDay +
+                ", count=" + count +
+                '}';
+    }
+}
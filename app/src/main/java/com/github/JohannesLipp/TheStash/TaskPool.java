@@ -0,0 +1,194 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size thread pool with a bounded queue and named background threads. Records how long
+ * tasks take from submission to completion, so queueing delays show up in {@link #toString()}.
+ * Obtain instances from {@link AppExecutors}.
+ * <p>
+ * When the queue is full, work is rejected rather than piling up. Callers go through
+ * {@link #tryExecute(Runnable)}, which logs the rejection and lets them decide what to do instead:
+ * tell the user, retry later, or run the task themselves if they are on a background thread.
+ */
+public class TaskPool implements Executor {
+
+    private static final String TAG = "TaskPool";
+
+    // Shown when work the user asked for is rejected
+    public static final String BUSY_MESSAGE = "Still busy with other work, please try again";
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    TaskPool(String name, int threads, int queueCapacity, RejectedExecutionHandler rejectedExecutionHandler) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new NamedThreadFactory(name), rejectedExecutionHandler);
+        this.executor.allowCoreThreadTimeOut(true); // Don't keep idle threads around
+    }
+
+    /**
+     * Queues the task, or throws {@link RejectedExecutionException} if the queue is full. Prefer
+     * {@link #tryExecute(Runnable)}; this is for code written against {@link Executor}.
+     */
+    @Override
+    public void execute(@NonNull Runnable task) {
+        if (!tryExecute(task)) {
+            throw new RejectedExecutionException("Queue of " + name + " pool is full");
+        }
+    }
+
+    /**
+     * Queues the task unless the queue is full, in which case the rejection is logged.
+     *
+     * @return Whether the task was queued.
+     */
+    public boolean tryExecute(@NonNull Runnable task) {
+        try {
+            executor.execute(timed(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Rejected task from " + Thread.currentThread().getName() + ": " + this);
+            return false;
+        }
+    }
+
+    public Future<?> submit(Runnable task) {
+        return executor.submit(timed(task));
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        final long queuedAt = System.nanoTime();
+        return executor.submit(() -> {
+            try {
+                return task.call();
+            } finally {
+                recordLatency(System.nanoTime() - queuedAt);
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of tasks waiting for a free thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTasks.get();
+    }
+
+    /**
+     * Average time from submission to completion, including time spent in the queue.
+     */
+    public double getAverageLatencyMillis() {
+        long completed = completedTasks.get();
+        return completed == 0 ? 0 : totalLatencyNanos.get() / 1e6 / completed;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    private Runnable timed(Runnable task) {
+        return new TimedTask(task);
+    }
+
+    private void recordLatency(long latencyNanos) {
+        completedTasks.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "TaskPool{%s, queued=%d, active=%d, completed=%d, avgLatency=%.1fms, maxLatency=%.1fms}",
+                name, getQueueDepth(), getActiveCount(), getCompletedTaskCount(), getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+
+    private class TimedTask implements Runnable {
+        final Runnable task;
+        final long queuedAt = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                recordLatency(System.nanoTime() - queuedAt);
+            }
+        }
+    }
+
+    /**
+     * Makes room for a new task by dropping the oldest queued one. Unlike
+     * {@link ThreadPoolExecutor.DiscardOldestPolicy}, a dropped {@link Future} is cancelled, so
+     * whoever waits for it or tracks it learns that it will never run.
+     */
+    static class CancelOldestPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            Runnable oldest = executor.getQueue().poll();
+            Runnable dropped = oldest instanceof TimedTask ? ((TimedTask) oldest).task : oldest;
+            if (dropped instanceof Future) {
+                ((Future<?>) dropped).cancel(false);
+            }
+            executor.execute(task);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String poolName;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String poolName) {
+            this.poolName = poolName;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "stash-" + poolName + "-" + threadNumber.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Tracks background tasks started on behalf of a lifecycle owner and cancels those still pending
+ * or running when it is destroyed. Only use it for work whose result is useless without the
+ * owner, such as loading data for display; writes should run unscoped so they are never lost.
+ */
+public class TaskScope implements DefaultLifecycleObserver {
+
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean destroyed = false;
+
+    /**
+     * Must be called from the main thread.
+     */
+    public TaskScope(LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Runs the task on the given pool as long as the owner lives. If the pool rejects the task,
+     * the returned future is already cancelled.
+     */
+    public Future<?> submit(TaskPool pool, Runnable task) {
+        return submit(pool, task, null);
+    }
+
+    /**
+     * Like {@link #submit(TaskPool, Runnable)}, and calls {@code onCancelled} if the task is
+     * cancelled while the owner lives, e.g. because the pool dropped it from a full queue. It is
+     * called on the thread that cancelled the task.
+     */
+    public Future<?> submit(TaskPool pool, Runnable task, @Nullable Runnable onCancelled) {
+        FutureTask<Void> future = new FutureTask<Void>(task, null) {
+            @Override
+            protected void done() {
+                tasks.remove(this);
+                if (isCancelled() && onCancelled != null && !destroyed) {
+                    onCancelled.run();
+                }
+            }
+        };
+        tasks.add(future);
+        if (!pool.tryExecute(future)) {
+            future.cancel(false); // Also removes it from the tasks again
+        }
+        return future;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        destroyed = true;
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        tasks.clear();
+        owner.getLifecycle().removeObserver(this);
+    }
+}
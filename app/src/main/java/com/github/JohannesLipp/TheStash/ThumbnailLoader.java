@@ -0,0 +1,165 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads list thumbnails from the {@link ImageStore}. Images are decoded in the background,
+ * downsampled to the size of the target view, and kept in a size-bounded LRU memory cache keyed
+ * by image hash and target size. All public methods must be called from the main thread.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+
+    // Used if the target view has neither a fixed size nor been laid out yet
+    private static final int DEFAULT_TARGET_SIZE_PX = 256;
+
+    private final AppDatabase database;
+    private final LruCache<String, Bitmap> cache;
+    private final TaskScope tasks;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<ImageView, Future<?>> pendingRequests = new HashMap<>();
+
+    public ThumbnailLoader(AppDatabase database, TaskScope tasks) {
+        this.database = database;
+        this.tasks = tasks;
+
+        // Use an eighth of the available heap for decoded thumbnails, measured in KiB
+        int cacheSizeKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        this.cache = new LruCache<String, Bitmap>(cacheSizeKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * Shows the image with the given hash in the target view, replacing any request still pending
+     * for that view. Cached thumbnails are set immediately.
+     */
+    public void load(ImageView target, String imageHash) {
+        cancel(target);
+
+        final int targetWidth = targetSize(target.getLayoutParams() != null ? target.getLayoutParams().width : 0, target.getWidth());
+        final int targetHeight = targetSize(target.getLayoutParams() != null ? target.getLayoutParams().height : 0, target.getHeight());
+        final String key = imageHash + "@" + targetWidth + "x" + targetHeight;
+
+        target.setTag(key);
+        Bitmap cached = cache.get(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            target.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        target.setImageBitmap(null);
+        target.setVisibility(View.VISIBLE);
+        final AtomicReference<Future<?>> request = new AtomicReference<>();
+        request.set(tasks.submit(AppExecutors.decode(), () -> {
+            byte[] imageData = ImageStore.load(database, imageHash);
+            Bitmap bitmap = imageData != null ? decodeSampled(imageData, targetWidth, targetHeight) : null;
+            if (Thread.currentThread().isInterrupted()) {
+                return; // Cancelled while decoding
+            }
+
+            mainHandler.post(() -> {
+                if (bitmap != null) {
+                    cache.put(key, bitmap);
+                }
+                if (!key.equals(target.getTag())) {
+                    return; // View was rebound to another image in the meantime
+                }
+                pendingRequests.remove(target);
+                if (bitmap != null) {
+                    target.setImageBitmap(bitmap);
+                } else {
+                    target.setVisibility(View.GONE);
+                }
+            });
+        }, () -> mainHandler.post(() -> {
+            // Still pending means the decode queue dropped it, not cancel(); the view still shows this image
+            if (pendingRequests.get(target) == request.get()) {
+                Log.d(TAG, "Decode of " + key + " was dropped from the queue, requesting it again");
+                pendingRequests.remove(target);
+                load(target, imageHash);
+            }
+        })));
+        pendingRequests.put(target, request.get());
+    }
+
+    /**
+     * Cancels a pending request for the given view and clears it, e.g. when its holder is recycled.
+     */
+    public void cancel(ImageView target) {
+        Future<?> pending = pendingRequests.remove(target);
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        target.setTag(null);
+    }
+
+    /**
+     * Releases cached thumbnails according to the memory pressure reported by
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.size() / 2);
+        }
+        Log.d(TAG, "Trimmed thumbnail cache for level " + level + ", now " + cache.size() + " KiB");
+    }
+
+    private static int targetSize(int layoutSize, int measuredSize) {
+        if (layoutSize > 0) {
+            return layoutSize;
+        } else if (measuredSize > 0) {
+            return measuredSize;
+        }
+        return DEFAULT_TARGET_SIZE_PX;
+    }
+
+    private static Bitmap decodeSampled(byte[] imageData, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565; // Thumbnails don't need alpha, halves the memory
+        return BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps both dimensions at or above the target.
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (height > targetHeight || width > targetWidth) {
+            final int halfHeight = height / 2;
+            final int halfWidth = width / 2;
+            while ((halfHeight / inSampleSize) >= targetHeight && (halfWidth / inSampleSize) >= targetWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.JohannesLipp.TheStash;
+
+import androidx.lifecycle.ViewModel;
+
+/**
+ * Keeps imports, exports and bulk refreshes started from {@link MainActivity} running across
+ * configuration changes. They are only cancelled once the activity is finished for good.
+ */
+public class TransferViewModel extends ViewModel {
+
+    DatabaseImporter databaseImporter;
+    CatalogImporter catalogImporter;
+    DatabaseExporter databaseExporter;
+    BulkRefresher bulkRefresher;
+    // Whether the running refresh was asked for by the user and reports its result
+    boolean bulkRefreshReported;
+
+    @Override
+    protected void onCleared() {
+        if (databaseImporter != null) {
+            databaseImporter.cancel();
+        }
+        if (catalogImporter != null) {
+            catalogImporter.cancel();
+        }
+        if (databaseExporter != null) {
+            databaseExporter.cancel();
+        }
+        if (bulkRefresher != null) {
+            bulkRefresher.cancel();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.github.JohannesLipp.TheStash;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpClient} based on {@link HttpURLConnection}. Requests compressed responses, applies
+ * timeouts and keeps connections alive between requests. Small JSON responses carrying an ETag
+ * or Last-Modified header are kept in memory and revalidated with conditional requests.
+ */
+public class UrlConnectionHttpClient implements HttpClient {
+
+    private static final String TAG = "UrlConnectionHttpClient";
+
+    // Only small JSON bodies, such as product data, are kept for revalidation; images are not
+    private static final int MAX_REVALIDATION_BODY_BYTES = 64 * 1024;
+    private static final int MAX_REVALIDATION_ENTRIES = 64;
+    // Unread rest of a body that is still read on close so the connection can be reused
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final String userAgent;
+    private final HttpStats stats = new HttpStats();
+
+    private final Map<String, RevalidationEntry> revalidationEntries = new LinkedHashMap<String, RevalidationEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RevalidationEntry> eldest) {
+            return size() > MAX_REVALIDATION_ENTRIES;
+        }
+    };
+
+    public UrlConnectionHttpClient(int connectTimeoutMillis, int readTimeoutMillis, String userAgent) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public HttpResponse get(String url) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestProperty("User-Agent", userAgent);
+        // Setting this explicitly disables transparent decompression, so the body is unzipped below
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+
+        RevalidationEntry entry;
+        synchronized (revalidationEntries) {
+            entry = revalidationEntries.get(url);
+        }
+        if (entry != null) {
+            if (entry.etag != null) {
+                connection.setRequestProperty("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", entry.lastModified);
+            }
+        }
+
+        int code = connection.getResponseCode();
+        boolean notModified = code == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null;
+        stats.recordRequest(System.nanoTime() - start, notModified);
+
+        InputStream raw = code >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream() : connection.getInputStream();
+        if (notModified) {
+            if (raw != null) {
+                new DrainingInputStream(raw).close(); // Lets the connection be reused
+            }
+            Log.d(TAG, "Not modified, serving " + entry.body.length + " B from memory: " + url);
+            return new HttpResponse(HttpURLConnection.HTTP_OK, new ByteArrayInputStream(entry.body), true);
+        }
+        if (raw == null) {
+            return new HttpResponse(code, null, false);
+        }
+
+        InputStream body = new DrainingInputStream(new CountingInputStream(raw, stats));
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            body = new GZIPInputStream(body);
+        }
+
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (code == HttpURLConnection.HTTP_OK && (etag != null || lastModified != null) && isJson(connection.getContentType())) {
+            body = keepForRevalidation(url, etag, lastModified, body);
+        }
+        return new HttpResponse(code, body, false);
+    }
+
+    @Override
+    public HttpStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Buffers bodies up to {@link #MAX_REVALIDATION_BODY_BYTES} so they can be served again after a
+     * 304 response. Larger bodies are passed through unchanged.
+     */
+    private InputStream keepForRevalidation(String url, String etag, String lastModified, InputStream body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while (buffer.size() <= MAX_REVALIDATION_BODY_BYTES && (read = body.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+
+        byte[] bytes = buffer.toByteArray();
+        if (bytes.length > MAX_REVALIDATION_BODY_BYTES) {
+            return new SequenceInputStream(new ByteArrayInputStream(bytes), body);
+        }
+
+        body.close();
+        synchronized (revalidationEntries) {
+            revalidationEntries.put(url, new RevalidationEntry(etag, lastModified, bytes));
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).contains("json");
+    }
+
+    private static class RevalidationEntry {
+        final String etag;
+        final String lastModified;
+        final byte[] body;
+
+        RevalidationEntry(String etag, String lastModified, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Reads what is left of the body, up to {@link #MAX_DRAIN_BYTES}, before closing it.
+     * {@link HttpURLConnection} only reuses a connection once its response was read to the end;
+     * abandoning a longer rest along with the connection is cheaper than downloading it.
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+        private boolean closed;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] chunk = new byte[4096];
+                int remaining = MAX_DRAIN_BYTES;
+                int read;
+                while (remaining > 0 && (read = in.read(chunk, 0, Math.min(chunk.length, remaining))) != -1) {
+                    remaining -= read;
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Failed to drain response, connection is not reused: " + e.getMessage());
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final HttpStats stats;
+
+        CountingInputStream(InputStream in, HttpStats stats) {
+            super(in);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                stats.recordBytes(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                stats.recordBytes(read);
+            }
+            return read;
+        }
+    }
+}
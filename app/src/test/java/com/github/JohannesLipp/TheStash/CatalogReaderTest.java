@@ -0,0 +1,87 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CatalogReaderTest {
+
+    private static final String TSV = "code\turl\tproduct_name\tproduct_name_de\tbrands\tcountries_tags\timage_url\tenergy_100g\n"
+            + "4000000000001\thttp://x\tPeeled tomatoes\tGesch\u00e4lte Tomaten\tStash Farms\ten:germany,en:austria\thttps://img/1.jpg\t80\n"
+            + "4000000000002\thttp://x\tPasta\t\tNudel AG\ten:france\t\t1500\n"
+            + "\thttp://x\tNo barcode\t\t\ten:germany\t\t\n"
+            + "4000000000003\thttp://x\tRice\t\t\ten:germany";
+
+    private static final String JSONL = "{\"code\":\"4000000000001\",\"product_name\":\"Peeled tomatoes\",\"product_name_de\":\"Gesch\u00e4lte Tomaten\","
+            + "\"brands\":\"Stash Farms\",\"nutriments\":{\"energy\":80,\"list\":[1,2]},\"countries_tags\":[\"en:germany\",\"en:austria\"],\"image_url\":\"https://img/1.jpg\"}\n"
+            + "{\"code\":\"4000000000002\",\"product_name\":\"Pasta\",\"brands\":\"Nudel AG\",\"countries_tags\":[\"en:france\"]}\n"
+            + "{\"product_name\":\"No barcode\",\"countries_tags\":[\"en:germany\"]}\n"
+            + "{\"code\":\"4000000000003\",\"product_name\":\"Rice\",\"countries_tags\":[\"en:germany\"]}\n";
+
+    @Test
+    public void readsTabSeparatedExport() throws IOException {
+        List<CatalogProduct> products = read(TSV, null);
+        assertEquals(3, products.size());
+        assertProduct(products.get(0), "4000000000001", "Gesch\u00e4lte Tomaten", "Stash Farms", "https://img/1.jpg");
+        assertProduct(products.get(1), "4000000000002", "Pasta", "Nudel AG", null);
+        assertProduct(products.get(2), "4000000000003", "Rice", null, null);
+    }
+
+    @Test
+    public void readsJsonLinesExport() throws IOException {
+        List<CatalogProduct> products = read(JSONL, null);
+        assertEquals(3, products.size());
+        assertProduct(products.get(0), "4000000000001", "Gesch\u00e4lte Tomaten", "Stash Farms", "https://img/1.jpg");
+        assertProduct(products.get(1), "4000000000002", "Pasta", "Nudel AG", null);
+        assertProduct(products.get(2), "4000000000003", "Rice", null, null);
+    }
+
+    @Test
+    public void filtersByCountry() throws IOException {
+        for (String export : new String[]{TSV, JSONL}) {
+            CatalogReader reader = new CatalogReader("en:germany");
+            List<CatalogProduct> products = new ArrayList<>();
+            reader.read(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)), products::add);
+
+            assertEquals(2, products.size());
+            assertEquals("4000000000001", products.get(0).getBarcode());
+            assertEquals("4000000000003", products.get(1).getBarcode());
+            assertEquals(4, reader.getProductsRead());
+            assertEquals(2, reader.getProductsSkipped());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileWithoutCodeColumn() throws IOException {
+        read("name\tbrands\nPasta\tNudel AG\n", null);
+    }
+
+    @Test
+    public void emptyFileHasNoProducts() throws IOException {
+        assertEquals(0, read("  \n", null).size());
+    }
+
+    private static List<CatalogProduct> read(String export, String countryTag) throws IOException {
+        List<CatalogProduct> products = new ArrayList<>();
+        new CatalogReader(countryTag).read(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)), products::add);
+        return products;
+    }
+
+    private static void assertProduct(CatalogProduct product, String barcode, String name, String brands, String imageUrl) {
+        assertEquals(barcode, product.getBarcode());
+        assertEquals(name, product.getName());
+        if (brands == null) {
+            assertNull(product.getBrands());
+        } else {
+            assertEquals(brands, product.getBrands());
+        }
+        assertEquals(imageUrl, product.getImageUrl());
+    }
+}
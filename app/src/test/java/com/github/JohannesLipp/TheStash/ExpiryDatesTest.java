@@ -0,0 +1,26 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+public class ExpiryDatesTest {
+
+    @Test
+    public void matchesJavaTimeAcrossCenturies() {
+        for (LocalDate date = LocalDate.of(1899, 12, 1); date.getYear() < 2201; date = date.plusDays(1)) {
+            assertEquals(date.toString(), date.toEpochDay(),
+                    ExpiryDates.toEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        }
+    }
+
+    @Test
+    public void knownDates() {
+        assertEquals(0, ExpiryDates.toEpochDay(1970, 1, 1));
+        assertEquals(-1, ExpiryDates.toEpochDay(1969, 12, 31));
+        assertEquals(11016, ExpiryDates.toEpochDay(2000, 2, 29));
+        assertEquals(11017, ExpiryDates.toEpochDay(2000, 3, 1));
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs Open Food Facts lookups against a local stub server, to check compression, conditional
+ * requests and not-found handling, and the bytes transferred per lookup.
+ */
+public class OpenFoodFactsHttpTest {
+    private static final String KNOWN_BARCODE = "4000000000001";
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private UrlConnectionHttpClient client;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private byte[] productJson;
+
+    @Before
+    public void setUp() throws IOException {
+        productJson = productJson().getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v2/product/", this::handleProduct);
+        server.createContext("/images/", this::handleImage);
+        server.start();
+
+        client = new UrlConnectionHttpClient(2_000, 2_000, Constants.HTTP_USER_AGENT);
+        OpenFoodFacts.configure(client, "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/product/");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        OpenFoodFacts.configure(new UrlConnectionHttpClient(Constants.HTTP_CONNECT_TIMEOUT_MS, Constants.HTTP_READ_TIMEOUT_MS, Constants.HTTP_USER_AGENT),
+                Constants.OPEN_FOOD_FACTS_BASE_URL);
+    }
+
+    @Test
+    public void lookupUsesCompressionAndRevalidation() throws IOException {
+        OpenFoodFactsResultDTO first = OpenFoodFacts.lookup(KNOWN_BARCODE);
+        assertEquals("Geschaelte Tomaten", first.getProductName());
+        assertEquals("Stash Farms", first.getBrands());
+        long bytesAfterFirst = client.getStats().getBytesReceived();
+        assertTrue("Expected a compressed transfer, got " + bytesAfterFirst + " B for " + productJson.length + " B of JSON",
+                bytesAfterFirst < productJson.length / 2);
+
+        OpenFoodFactsResultDTO second = OpenFoodFacts.lookup(KNOWN_BARCODE);
+        assertEquals(first.getProductName(), second.getProductName());
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(1, client.getStats().getNotModifiedCount());
+        assertEquals(bytesAfterFirst, client.getStats().getBytesReceived());
+        assertEquals(2, client.getStats().getRequestCount());
+    }
+
+    @Test
+    public void unknownProductIsNotFound() throws IOException {
+        assertNull(OpenFoodFacts.lookup("0000000000000"));
+    }
+
+    @Test
+    public void imagesAreNotKeptForRevalidation() throws IOException {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/images/front.jpg";
+        for (int i = 0; i < 2; i++) {
+            try (HttpResponse response = client.get(url)) {
+                assertTrue(response.isSuccessful());
+                assertFalse(response.isRevalidated());
+            }
+        }
+        assertEquals(0, client.getStats().getNotModifiedCount());
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().containsKey("If-None-Match")) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = new byte[4096];
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleProduct(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.endsWith(KNOWN_BARCODE + ".json")) {
+            byte[] body = "{\"status\":0,\"status_verbose\":\"product not found\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(404, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        fullResponses.incrementAndGet();
+        byte[] body = productJson;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String productJson() {
+        StringBuilder ingredients = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                ingredients.append(',');
+            }
+            ingredients.append("{\"id\":\"en:tomato\",\"percent_estimate\":").append(100 - i % 50)
+                    .append(",\"text\":\"Tomaten\",\"vegan\":\"yes\",\"vegetarian\":\"yes\"}");
+        }
+        return "{\"code\":\"" + KNOWN_BARCODE + "\",\"status\":1,\"status_verbose\":\"product found\",\"product\":{"
+                + "\"product_name\":\"Peeled tomatoes\",\"product_name_de\":\"Geschaelte Tomaten\",\"brands\":\"Stash Farms\","
+                + "\"image_url\":\"https://images.example.org/4000000000001/front.jpg\","
+                + "\"ingredients\":[" + ingredients + "]}}";
+    }
+}
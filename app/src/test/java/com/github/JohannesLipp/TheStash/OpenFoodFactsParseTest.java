@@ -0,0 +1,93 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Checks the streaming product parser against the previous approach of reading the whole response
+ * into a String and going through a JSON tree, using a full, unfiltered product response from
+ * the test resources.
+ */
+public class OpenFoodFactsParseTest {
+    private static final String PRODUCT_RESPONSE = "/openfoodfacts-product-4000000000001.json";
+
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void streamingParserMatchesTreeParser() throws IOException {
+        byte[] payload = readResource(PRODUCT_RESPONSE);
+
+        OpenFoodFactsResultDTO streamed = OpenFoodFacts.parseProduct(new ByteArrayInputStream(payload));
+        OpenFoodFactsResultDTO tree = parseWithTree(payload);
+
+        assertEquals(tree.getBrands(), streamed.getBrands());
+        assertEquals(tree.getImageUrl(), streamed.getImageUrl());
+        assertEquals("Gesch\u00e4lte Tomaten", streamed.getProductName());
+    }
+
+    @Test
+    public void nameFollowsDeviceLanguage() throws IOException {
+        Locale.setDefault(Locale.UK);
+        assertEquals("Peeled tomatoes", OpenFoodFacts.parseProduct(new ByteArrayInputStream(readResource(PRODUCT_RESPONSE))).getProductName());
+
+        // No name in this language, so the German one is used
+        Locale.setDefault(Locale.ITALY);
+        assertEquals("Gesch\u00e4lte Tomaten", OpenFoodFacts.parseProduct(new ByteArrayInputStream(readResource(PRODUCT_RESPONSE))).getProductName());
+    }
+
+    @Test
+    public void notFoundResponseIsNull() throws IOException {
+        byte[] payload = "{\"code\":\"1\",\"status\":0,\"status_verbose\":\"product not found\"}".getBytes(StandardCharsets.UTF_8);
+        assertNull(OpenFoodFacts.parseProduct(new ByteArrayInputStream(payload)));
+    }
+
+    @Test
+    public void requestsOnlyUsedFields() {
+        String url = OpenFoodFacts.getProductUrl("4000000000001");
+        assertTrue(url, url.endsWith("?fields=product_name,product_name_de,brands,image_url"));
+    }
+
+    /**
+     * The parsing path used before: whole body as a String, a fresh mapper and a tree.
+     */
+    private static OpenFoodFactsResultDTO parseWithTree(byte[] payload) throws IOException {
+        String json = new String(payload, StandardCharsets.UTF_8);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode product = mapper.readTree(json).path("product");
+        return new OpenFoodFactsResultDTO(product.path("product_name").asText(null), product.path("product_name_de").asText(null),
+                product.path("brands").asText(null), product.path("image_url").asText(null));
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = OpenFoodFactsParseTest.class.getResourceAsStream(name)) {
+            assertNotNull(name, in);
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScanDeduplicatorTest {
+
+    @Test
+    public void repeatedDetectionsWithinWindowAreDropped() {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(2_500);
+        assertTrue(deduplicator.accept("4000000000001", 0));
+        assertFalse(deduplicator.accept("4000000000001", 100));
+        assertTrue(deduplicator.accept("4000000000002", 200));
+        assertFalse(deduplicator.accept("4000000000001", 2_400));
+    }
+
+    @Test
+    public void sameBarcodeCountsAgainAfterWindow() {
+        ScanDeduplicator deduplicator = new ScanDeduplicator(2_500);
+        assertTrue(deduplicator.accept("4000000000001", 0));
+        assertTrue(deduplicator.accept("4000000000001", 2_500));
+    }
+}
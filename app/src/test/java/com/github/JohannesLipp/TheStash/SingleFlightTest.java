@@ -0,0 +1,131 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+    private static final int CALLERS = 32;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneFetch() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch allJoined = new CountDownLatch(CALLERS);
+
+        List<Future<CompletableFuture<String>>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(executor.submit(() -> {
+                CompletableFuture<String> result = singleFlight.execute("4000000000001", executor, () -> {
+                    fetches.incrementAndGet();
+                    awaitQuietly(release);
+                    return "Tomatoes";
+                });
+                allJoined.countDown();
+                return result;
+            }));
+        }
+
+        // The fetch is held back until every caller has joined, so all of them overlap with it
+        assertTrue(allJoined.await(5, TimeUnit.SECONDS));
+        release.countDown();
+
+        for (Future<CompletableFuture<String>> caller : callers) {
+            assertEquals("Tomatoes", caller.get().get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetches.get());
+        assertFalse(singleFlight.isInFlight("4000000000001"));
+    }
+
+    @Test
+    public void blockingCallersJoinAsyncFetch() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = singleFlight.execute("key", executor, () -> {
+            fetches.incrementAndGet();
+            awaitQuietly(release);
+            return "value";
+        });
+        assertTrue(singleFlight.isInFlight("key"));
+
+        CountDownLatch callersStarted = new CountDownLatch(CALLERS - 1);
+        List<Future<String>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS - 1; i++) {
+            callers.add(executor.submit(() -> {
+                callersStarted.countDown();
+                return singleFlight.run("key", () -> {
+                    fetches.incrementAndGet();
+                    return "other";
+                });
+            }));
+        }
+        assertTrue(callersStarted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200); // Give the callers time to block on the shared request
+        release.countDown();
+
+        assertEquals("value", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> caller : callers) {
+            assertEquals("value", caller.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void failureReachesEveryCallerAndNextCallFetchesAgain() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        IOException failure = new IOException("offline");
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = singleFlight.execute("key", executor, () -> {
+            awaitQuietly(release);
+            throw failure;
+        });
+        CompletableFuture<String> second = singleFlight.execute("key", executor, () -> "unused");
+        assertSame(first, second);
+        release.countDown();
+
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail("Expected the fetch to fail");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        assertEquals("fresh", singleFlight.run("key", () -> "fresh"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
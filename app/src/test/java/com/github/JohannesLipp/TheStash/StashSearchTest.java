@@ -0,0 +1,29 @@
+package com.github.JohannesLipp.TheStash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StashSearchTest {
+
+    @Test
+    public void wordsBecomePrefixTerms() {
+        assertEquals("tomat*", StashSearch.toMatchQuery("Tomat"));
+        assertEquals("stash* farms*", StashSearch.toMatchQuery("  Stash   Farms "));
+        assertEquals("400000*", StashSearch.toMatchQuery("400000"));
+    }
+
+    @Test
+    public void querySyntaxIsDropped() {
+        assertEquals("a* or* b* c*", StashSearch.toMatchQuery("a\" OR b* -c"));
+        assertEquals("gesch\u00e4lte*", StashSearch.toMatchQuery("Gesch\u00c4lte"));
+    }
+
+    @Test
+    public void nothingSearchableIsNull() {
+        assertNull(StashSearch.toMatchQuery(null));
+        assertNull(StashSearch.toMatchQuery(""));
+        assertNull(StashSearch.toMatchQuery(" \"*- "));
+    }
+}